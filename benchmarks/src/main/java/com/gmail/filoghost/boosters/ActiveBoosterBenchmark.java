@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.gmail.filoghost.boosters.api.Booster;
+import com.gmail.filoghost.boosters.api.BoosterHandle;
+import com.gmail.filoghost.boosters.api.BoostersAPI;
+
+/**
+ * Letture dei booster attivi da parte degli altri plugin, chiamate per ogni ricompensa data ai giocatori.
+ * Con -prof gc, gc.alloc.rate.norm deve restare circa 0 B/op in tutti i casi.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ActiveBoosterBenchmark {
+	
+	private static final String MISSING_PLUGIN_ID = "nessuno";
+	
+	private BoosterHandle activeHandle;
+	private BoosterHandle missingHandle;
+	
+	
+	@Setup
+	public void setup() {
+		BoostersPlugin plugin = BenchmarkFixtures.loadPlugin();
+		plugin.activeBoosters.put(BenchmarkFixtures.activeBooster(1, BenchmarkFixtures.PLUGIN_ID, System.currentTimeMillis()));
+		
+		activeHandle = BoostersAPI.getBoosterHandle(BenchmarkFixtures.PLUGIN_ID);
+		missingHandle = BoostersAPI.getBoosterHandle(MISSING_PLUGIN_ID);
+	}
+	
+	
+	@Benchmark
+	public Booster getActiveBoosterHit() {
+		return BoostersAPI.getActiveBooster(BenchmarkFixtures.PLUGIN_ID);
+	}
+	
+	@Benchmark
+	public Booster getActiveBoosterMiss() {
+		return BoostersAPI.getActiveBooster(MISSING_PLUGIN_ID);
+	}
+	
+	@Benchmark
+	public int handleGetMultiplierHit() {
+		return activeHandle.getMultiplier();
+	}
+	
+	@Benchmark
+	public int handleGetMultiplierMiss() {
+		return missingHandle.getMultiplier();
+	}
+	
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.gmail.filoghost.boosters.sql.BoosterImpl;
+import com.google.common.collect.Lists;
+
+/**
+ * Allineamento dei booster in memoria con quelli letti dal database, senza la query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ActiveBoosterCheckTaskBenchmark {
+	
+	@Param({"10", "100"})
+	private int activeBoosters;
+	
+	private ActiveBoosterCheckTask task;
+	private List<BoosterImpl> loadedBoosters;
+	private List<BoosterImpl> replacedBoosters;
+	private boolean replaced;
+	private long now;
+	
+	
+	@Setup
+	public void setup() {
+		BoostersPlugin plugin = BenchmarkFixtures.loadPlugin();
+		task = new ActiveBoosterCheckTask(TimeUnit.MINUTES.toMillis(5));
+		now = System.currentTimeMillis();
+		
+		loadedBoosters = Lists.newArrayList();
+		replacedBoosters = Lists.newArrayList();
+		for (int i = 0; i < activeBoosters; i++) {
+			loadedBoosters.add(BenchmarkFixtures.activeBooster(i + 1, "plugin" + i, now));
+			// Stessi plugin, ma booster diversi: ogni lettura li sostituisce tutti
+			replacedBoosters.add(BenchmarkFixtures.activeBooster(activeBoosters + i + 1, "plugin" + i, now));
+		}
+		
+		plugin.activeBoosters.modify(boosters -> {
+			boosters.clear();
+			for (BoosterImpl booster : loadedBoosters) {
+				boosters.put(booster.getPluginID(), booster);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Il caso normale: niente è cambiato dall'ultima lettura.
+	 */
+	@Benchmark
+	public List<BoosterImpl> reconcileFullUnchanged() {
+		return task.reconcileFull(loadedBoosters, now);
+	}
+	
+	/**
+	 * Il caso peggiore: tutti i booster sono stati sostituiti da altri server.
+	 */
+	@Benchmark
+	public List<BoosterImpl> reconcileFullReplaced() {
+		replaced = !replaced;
+		return task.reconcileFull(replaced ? replacedBoosters : loadedBoosters, now);
+	}
+	
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.bukkit.entity.Player;
+
+import com.gmail.filoghost.boosters.sql.BoosterImpl;
+import com.google.common.collect.Lists;
+
+/**
+ * Oggetti comuni ai benchmark: il plugin caricato senza database e booster di esempio.
+ */
+public class BenchmarkFixtures {
+	
+	public static final String PLUGIN_ID = "skywars";
+	public static final String PLAYER_NAME = "Benchmark";
+	
+	
+	public static synchronized BoostersPlugin loadPlugin() {
+		if (BoostersPlugin.instance == null) {
+			BoostersPlugin.instance = new BoostersPlugin();
+		}
+		return BoostersPlugin.instance;
+	}
+	
+	
+	public static BoosterImpl activeBooster(int id, String pluginID, long now) {
+		return new BoosterImpl(PLAYER_NAME, id, pluginID, 2, 3600_000, now);
+	}
+	
+	
+	/**
+	 * Un booster attivo per ogni plugin diverso, seguiti da quelli ancora da attivare.
+	 */
+	public static List<BoosterImpl> playerBoosters(int count, int activeCount, long now) {
+		List<BoosterImpl> boosters = Lists.newArrayListWithCapacity(count);
+		for (int i = 0; i < count; i++) {
+			if (i < activeCount) {
+				boosters.add(activeBooster(i + 1, "plugin" + i, now));
+			} else {
+				// ID in ordine inverso, così il menu deve davvero ordinarli
+				boosters.add(new BoosterImpl(PLAYER_NAME, count * 2 - i, "plugin" + (i % 4), 2 + (i % 3), 1800_000, null));
+			}
+		}
+		return boosters;
+	}
+	
+	
+	public static Player player(String name) {
+		UUID uuid = UUID.nameUUIDFromBytes(name.getBytes());
+		return new Player() {
+			
+			@Override
+			public UUID getUniqueId() {
+				return uuid;
+			}
+			
+			@Override
+			public String getName() {
+				return name;
+			}
+			
+			@Override
+			public boolean isOnline() {
+				return true;
+			}
+			
+			@Override
+			public void sendMessage(String message) {
+			}
+		};
+	}
+	
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimeUtilsBenchmark {
+	
+	// Sempre lo stesso secondo: il caso del menu aggiornato più volte nello stesso secondo
+	private long sameSecond = TimeUnit.HOURS.toMillis(2) + TimeUnit.MINUTES.toMillis(5) + 300;
+	
+	// Un secondo diverso a ogni chiamata: il caso del countdown
+	private long countdown = TimeUnit.DAYS.toMillis(1);
+	
+	private String shortInput = "30m";
+	private String longInput = "2d12h30m15s";
+	
+	
+	@Benchmark
+	public String formatTimespanSameSecond() {
+		return TimeUtils.formatTimespan(sameSecond);
+	}
+	
+	@Benchmark
+	public String formatTimespanCountdown() {
+		countdown -= 1000;
+		if (countdown <= 0) {
+			countdown = TimeUnit.DAYS.toMillis(1);
+		}
+		return TimeUtils.formatTimespan(countdown);
+	}
+	
+	@Benchmark
+	public long readTimespanShort() throws InvalidTimeFormatException {
+		return TimeUtils.readTimespan(shortInput);
+	}
+	
+	@Benchmark
+	public long readTimespanLong() throws InvalidTimeFormatException {
+		return TimeUtils.readTimespan(longInput);
+	}
+	
+}
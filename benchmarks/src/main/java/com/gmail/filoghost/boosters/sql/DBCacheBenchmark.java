@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.sql;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.gmail.filoghost.boosters.BenchmarkFixtures;
+import com.gmail.filoghost.boosters.menu.BoostersMenu;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Richieste della prima pagina del menu. Nel caso senza cache la query è sostituita da una lista già pronta,
+ * quindi si misura solo il costo della cache e del passaggio al thread del database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DBCacheBenchmark {
+	
+	private Player player;
+	private volatile List<BoosterImpl> lastResult;
+	
+	private final DBCache.Callback<List<BoosterImpl>> successCallback = boosters -> lastResult = boosters;
+	private final DBCache.Callback<Exception> errorCallback = error -> {
+		throw new IllegalStateException(error);
+	};
+	
+	
+	@Setup
+	public void setup() {
+		BenchmarkFixtures.loadPlugin();
+		SQLExecutor.start(1, 100, false);
+		
+		List<BoosterImpl> page = ImmutableList.copyOf(BenchmarkFixtures.playerBoosters(BoostersMenu.PAGE_SIZE + 1, 3, System.currentTimeMillis()));
+		DBCache.configure(TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(1), 1000, (playerName, pendingLimit) -> page);
+		
+		player = BenchmarkFixtures.player(BenchmarkFixtures.PLAYER_NAME);
+		getFirstBoostersPage(); // Riempie la cache per il caso con cache
+	}
+	
+	
+	@TearDown
+	public void tearDown() {
+		SQLExecutor.shutdown();
+	}
+	
+	
+	@Benchmark
+	public List<BoosterImpl> hit() {
+		DBCache.getFirstBoostersPage(player, () -> { }, successCallback, errorCallback);
+		return lastResult;
+	}
+	
+	@Benchmark
+	public List<BoosterImpl> miss() {
+		DBCache.invalidate(player.getName());
+		return getFirstBoostersPage();
+	}
+	
+	
+	private List<BoosterImpl> getFirstBoostersPage() {
+		lastResult = null;
+		DBCache.getFirstBoostersPage(player, () -> { }, successCallback, errorCallback);
+		
+		List<BoosterImpl> result;
+		while ((result = lastResult) == null) {
+			Thread.yield();
+		}
+		return result;
+	}
+	
+}
@@ -0,0 +1,16 @@
+package net.cubespace.yamler;
+
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Implementazione minima per i benchmark: non legge né scrive il file, restano i valori predefiniti dei campi.
+ */
+public abstract class YamlerConfig {
+	
+	public YamlerConfig(Plugin plugin, String fileName, String... header) {
+	}
+	
+	public void init() throws YamlerConfigurationException {
+	}
+	
+}
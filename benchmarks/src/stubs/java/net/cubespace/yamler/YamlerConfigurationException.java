@@ -0,0 +1,11 @@
+package net.cubespace.yamler;
+
+public class YamlerConfigurationException extends Exception {
+	
+	private static final long serialVersionUID = 1L;
+	
+	public YamlerConfigurationException(String message) {
+		super(message);
+	}
+	
+}
@@ -0,0 +1,110 @@
+package org.bukkit;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.logging.Logger;
+
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Implementazione minima per i benchmark, senza server: i task immediati vengono eseguiti subito
+ * sul thread chiamante, quelli ritardati o ripetuti non vengono mai eseguiti.
+ */
+public final class Bukkit {
+	
+	private static final BukkitTask NO_OP_TASK = () -> { };
+	
+	private static final BukkitScheduler SCHEDULER = new BukkitScheduler() {
+		
+		@Override
+		public BukkitTask runTask(Plugin plugin, Runnable task) {
+			task.run();
+			return NO_OP_TASK;
+		}
+		
+		@Override
+		public BukkitTask runTaskAsynchronously(Plugin plugin, Runnable task) {
+			task.run();
+			return NO_OP_TASK;
+		}
+		
+		@Override
+		public BukkitTask runTaskLater(Plugin plugin, Runnable task, long delay) {
+			return NO_OP_TASK;
+		}
+		
+		@Override
+		public BukkitTask runTaskLaterAsynchronously(Plugin plugin, Runnable task, long delay) {
+			return NO_OP_TASK;
+		}
+		
+		@Override
+		public BukkitTask runTaskTimer(Plugin plugin, Runnable task, long delay, long period) {
+			return NO_OP_TASK;
+		}
+		
+		@Override
+		public BukkitTask runTaskTimerAsynchronously(Plugin plugin, Runnable task, long delay, long period) {
+			return NO_OP_TASK;
+		}
+	};
+	
+	private static final PluginManager PLUGIN_MANAGER = new PluginManager() {
+		
+		@Override
+		public boolean isPluginEnabled(String name) {
+			return true;
+		}
+		
+		@Override
+		public void registerEvents(org.bukkit.event.Listener listener, Plugin plugin) {
+		}
+	};
+	
+	private static final ConsoleCommandSender CONSOLE = new ConsoleCommandSender() {
+		
+		@Override
+		public void sendMessage(String message) {
+			Logger.getLogger("Console").info(message);
+		}
+		
+		@Override
+		public String getName() {
+			return "CONSOLE";
+		}
+	};
+	
+	
+	private Bukkit() {
+	}
+	
+	public static BukkitScheduler getScheduler() {
+		return SCHEDULER;
+	}
+	
+	public static PluginManager getPluginManager() {
+		return PLUGIN_MANAGER;
+	}
+	
+	public static ConsoleCommandSender getConsoleSender() {
+		return CONSOLE;
+	}
+	
+	public static Collection<? extends Player> getOnlinePlayers() {
+		return Collections.emptyList();
+	}
+	
+	public static Player getPlayerExact(String name) {
+		return null;
+	}
+	
+	public static boolean isPrimaryThread() {
+		return true;
+	}
+	
+}
@@ -0,0 +1,10 @@
+package org.bukkit;
+
+public enum Material {
+	
+	ARROW,
+	POTION,
+	STAINED_GLASS_PANE,
+	WRITTEN_BOOK;
+	
+}
@@ -0,0 +1,7 @@
+package org.bukkit.entity;
+
+import org.bukkit.command.CommandSender;
+
+public interface HumanEntity extends CommandSender {
+	
+}
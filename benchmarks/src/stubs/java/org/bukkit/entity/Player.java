@@ -0,0 +1,11 @@
+package org.bukkit.entity;
+
+import java.util.UUID;
+
+public interface Player extends HumanEntity {
+	
+	UUID getUniqueId();
+	
+	boolean isOnline();
+	
+}
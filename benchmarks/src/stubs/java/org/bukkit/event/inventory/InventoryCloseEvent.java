@@ -0,0 +1,17 @@
+package org.bukkit.event.inventory;
+
+import org.bukkit.entity.HumanEntity;
+
+public class InventoryCloseEvent {
+	
+	private final HumanEntity player;
+	
+	public InventoryCloseEvent(HumanEntity player) {
+		this.player = player;
+	}
+	
+	public HumanEntity getPlayer() {
+		return player;
+	}
+	
+}
@@ -0,0 +1,5 @@
+package org.bukkit.inventory.meta;
+
+public interface ItemMeta {
+	
+}
@@ -0,0 +1,12 @@
+package org.bukkit.inventory.meta;
+
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+public interface PotionMeta extends ItemMeta {
+	
+	boolean setMainEffect(PotionEffectType type);
+	
+	boolean addCustomEffect(PotionEffect effect, boolean overwrite);
+	
+}
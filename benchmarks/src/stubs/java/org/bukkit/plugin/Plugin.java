@@ -0,0 +1,16 @@
+package org.bukkit.plugin;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+public interface Plugin {
+	
+	File getDataFolder();
+	
+	Logger getLogger();
+	
+	String getName();
+	
+	boolean isEnabled();
+	
+}
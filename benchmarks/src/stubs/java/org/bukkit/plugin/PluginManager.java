@@ -0,0 +1,11 @@
+package org.bukkit.plugin;
+
+import org.bukkit.event.Listener;
+
+public interface PluginManager {
+	
+	boolean isPluginEnabled(String name);
+	
+	void registerEvents(Listener listener, Plugin plugin);
+	
+}
@@ -0,0 +1,57 @@
+package org.bukkit.plugin.java;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Implementazione minima per i benchmark: a differenza di quella reale può essere istanziata fuori da un server.
+ */
+public abstract class JavaPlugin implements Plugin {
+	
+	private final Logger logger = Logger.getLogger(getClass().getSimpleName());
+	private final File dataFolder = new File(System.getProperty("java.io.tmpdir"), getClass().getSimpleName());
+	private boolean enabled;
+	
+	public void onLoad() {
+	}
+	
+	public void onEnable() {
+	}
+	
+	public void onDisable() {
+	}
+	
+	@Override
+	public File getDataFolder() {
+		return dataFolder;
+	}
+	
+	@Override
+	public Logger getLogger() {
+		return logger;
+	}
+	
+	@Override
+	public String getName() {
+		return getClass().getSimpleName();
+	}
+	
+	@Override
+	public final boolean isEnabled() {
+		return enabled;
+	}
+	
+	protected final void setEnabled(boolean enabled) {
+		if (this.enabled != enabled) {
+			this.enabled = enabled;
+			if (enabled) {
+				onEnable();
+			} else {
+				onDisable();
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,25 @@
+package org.bukkit.potion;
+
+public class PotionEffectType {
+	
+	public static final PotionEffectType
+		JUMP = new PotionEffectType(8, "JUMP"),
+		WATER_BREATHING = new PotionEffectType(13, "WATER_BREATHING");
+	
+	private final int id;
+	private final String name;
+	
+	protected PotionEffectType(int id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+	
+	public int getId() {
+		return id;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+}
@@ -0,0 +1,7 @@
+package org.bukkit.scheduler;
+
+public interface BukkitTask {
+	
+	void cancel();
+	
+}
@@ -0,0 +1,69 @@
+package wild.api.command;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Implementazione minima per i benchmark: il comando non viene registrato.
+ */
+public abstract class CommandFramework {
+	
+	protected final Plugin plugin;
+	protected String label;
+	
+	public CommandFramework(Plugin plugin, String label, String... aliases) {
+		this.plugin = plugin;
+		this.label = label;
+	}
+	
+	public abstract void execute(CommandSender sender, String label, String[] args);
+	
+	
+	@Target(ElementType.TYPE)
+	@Retention(RetentionPolicy.RUNTIME)
+	public static @interface Permission {
+		
+		String value();
+		
+	}
+	
+	public static class ExecuteException extends RuntimeException {
+		
+		private static final long serialVersionUID = 1L;
+		
+		public ExecuteException(String message) {
+			super(message);
+		}
+		
+	}
+	
+	public static class CommandValidate {
+		
+		public static Player getPlayerSender(CommandSender sender) {
+			isTrue(sender instanceof Player, "Non puoi farlo dalla console.");
+			return (Player) sender;
+		}
+		
+		public static int getInteger(String input) {
+			try {
+				return Integer.parseInt(input);
+			} catch (NumberFormatException e) {
+				throw new ExecuteException("Numero non valido.");
+			}
+		}
+		
+		public static void isTrue(boolean condition, String message) {
+			if (!condition) {
+				throw new ExecuteException(message);
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,77 @@
+package wild.api.command;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.Collections;
+import java.util.List;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Implementazione minima per i benchmark: i sottocomandi non vengono risolti.
+ */
+public abstract class SubCommandFramework extends CommandFramework {
+	
+	public SubCommandFramework(Plugin plugin, String label, String... aliases) {
+		super(plugin, label, aliases);
+	}
+	
+	public abstract void noArgs(CommandSender sender);
+	
+	@Override
+	public void execute(CommandSender sender, String label, String[] args) {
+		noArgs(sender);
+	}
+	
+	public List<SubCommandDetails> getAccessibleSubCommands(CommandSender sender) {
+		return Collections.emptyList();
+	}
+	
+	
+	@Target(ElementType.METHOD)
+	@Retention(RetentionPolicy.RUNTIME)
+	public static @interface SubCommand {
+		
+		String value();
+		
+	}
+	
+	@Target(ElementType.METHOD)
+	@Retention(RetentionPolicy.RUNTIME)
+	public static @interface SubCommandUsage {
+		
+		String value();
+		
+	}
+	
+	@Target(ElementType.METHOD)
+	@Retention(RetentionPolicy.RUNTIME)
+	public static @interface SubCommandMinArgs {
+		
+		int value();
+		
+	}
+	
+	public static class SubCommandDetails {
+		
+		private final String name, usage;
+		
+		public SubCommandDetails(String name, String usage) {
+			this.name = name;
+			this.usage = usage;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public String getUsage() {
+			return usage;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,9 @@
+package wild.api.menu;
+
+import org.bukkit.entity.Player;
+
+public interface ClickHandler {
+	
+	void onClick(Player clicker);
+	
+}
@@ -0,0 +1,65 @@
+package wild.api.menu;
+
+import java.util.List;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+public class Icon {
+	
+	private final Material material;
+	private final int dataValue;
+	private final String name;
+	private final List<String> lore;
+	private final boolean glow, closeOnClick;
+	private final ClickHandler clickHandler;
+	private final MetaModifier metaModifier;
+	
+	protected Icon(Material material, int dataValue, String name, List<String> lore, boolean glow, boolean closeOnClick, ClickHandler clickHandler, MetaModifier metaModifier) {
+		this.material = material;
+		this.dataValue = dataValue;
+		this.name = name;
+		this.lore = lore;
+		this.glow = glow;
+		this.closeOnClick = closeOnClick;
+		this.clickHandler = clickHandler;
+		this.metaModifier = metaModifier;
+	}
+	
+	public Material getMaterial() {
+		return material;
+	}
+	
+	public int getDataValue() {
+		return dataValue;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public List<String> getLore() {
+		return lore;
+	}
+	
+	public boolean isGlow() {
+		return glow;
+	}
+	
+	public boolean isCloseOnClick() {
+		return closeOnClick;
+	}
+	
+	public ClickHandler getClickHandler() {
+		return clickHandler;
+	}
+	
+	public MetaModifier getMetaModifier() {
+		return metaModifier;
+	}
+	
+	public ItemStack createItemstack() {
+		return new ItemStack(material);
+	}
+	
+}
@@ -0,0 +1,61 @@
+package wild.api.menu;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.bukkit.Material;
+
+public class IconBuilder {
+	
+	private final Material material;
+	private int dataValue;
+	private String name;
+	private List<String> lore;
+	private boolean glow, closeOnClick;
+	private ClickHandler clickHandler;
+	private MetaModifier metaModifier;
+	
+	public IconBuilder(Material material) {
+		this.material = material;
+	}
+	
+	public IconBuilder dataValue(int dataValue) {
+		this.dataValue = dataValue;
+		return this;
+	}
+	
+	public IconBuilder name(String name) {
+		this.name = name;
+		return this;
+	}
+	
+	public IconBuilder lore(String... lore) {
+		this.lore = Arrays.asList(lore);
+		return this;
+	}
+	
+	public IconBuilder glow() {
+		this.glow = true;
+		return this;
+	}
+	
+	public IconBuilder closeOnClick(boolean closeOnClick) {
+		this.closeOnClick = closeOnClick;
+		return this;
+	}
+	
+	public IconBuilder clickHandler(ClickHandler clickHandler) {
+		this.clickHandler = clickHandler;
+		return this;
+	}
+	
+	public IconBuilder metaModifier(MetaModifier metaModifier) {
+		this.metaModifier = metaModifier;
+		return this;
+	}
+	
+	public Icon build() {
+		return new Icon(material, dataValue, name, lore, glow, closeOnClick, clickHandler, metaModifier);
+	}
+	
+}
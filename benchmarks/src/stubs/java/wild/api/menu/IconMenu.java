@@ -0,0 +1,46 @@
+package wild.api.menu;
+
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+
+/**
+ * Implementazione minima per i benchmark: le icone vengono solo memorizzate, l'inventario ignora le modifiche.
+ */
+public class IconMenu {
+	
+	private final String name;
+	private final Icon[] icons;
+	private final Inventory inventory = (index, item) -> { };
+	
+	public IconMenu(String name, int rows) {
+		this.name = name;
+		this.icons = new Icon[rows * 9];
+	}
+	
+	public void setIcon(int x, int y, Icon icon) {
+		icons[(y - 1) * 9 + (x - 1)] = icon;
+	}
+	
+	public Icon getIcon(int x, int y) {
+		return icons[(y - 1) * 9 + (x - 1)];
+	}
+	
+	public int getRows() {
+		return icons.length / 9;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public Inventory getInventory() {
+		return inventory;
+	}
+	
+	public void refresh() {
+	}
+	
+	public void open(Player player) {
+	}
+	
+}
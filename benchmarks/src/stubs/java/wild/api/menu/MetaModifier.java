@@ -0,0 +1,9 @@
+package wild.api.menu;
+
+import org.bukkit.inventory.meta.ItemMeta;
+
+public interface MetaModifier {
+	
+	void modify(ItemMeta meta);
+	
+}
@@ -29,46 +29,218 @@
 package com.gmail.filoghost.boosters;
 
 import java.sql.SQLException;
-import java.util.Iterator;
+import java.sql.Timestamp;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
+import com.gmail.filoghost.boosters.bus.BoosterEvent.Type;
+import com.gmail.filoghost.boosters.bus.BoosterEvents;
+import com.gmail.filoghost.boosters.metrics.Histogram;
+import com.gmail.filoghost.boosters.metrics.Metrics;
+import com.gmail.filoghost.boosters.sql.ActivationJournal;
+import com.gmail.filoghost.boosters.sql.BoosterChanges;
 import com.gmail.filoghost.boosters.sql.BoosterImpl;
 import com.gmail.filoghost.boosters.sql.DBCache;
 import com.gmail.filoghost.boosters.sql.SQLManager;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+/**
+ * Legge dal database solo le righe modificate dall'ultimo controllo e le applica ai booster attivi in memoria.
+ * Periodicamente viene comunque fatta una rilettura completa, per accorgersi delle righe eliminate a mano dal database.
+ */
 public class ActiveBoosterCheckTask implements Runnable {
 	
+	/*
+	 * Una transazione può essere confermata dopo che il suo updated_at è già stato superato da un controllo,
+	 * quindi ogni lettura incrementale ricomincia un po' prima dell'ultimo istante visto.
+	 */
+	private static final long CHANGES_OVERLAP_MILLIS = TimeUnit.SECONDS.toMillis(5);
+	
+	private static final Histogram FULL_SYNC_LATENCY = Metrics.histogram("check_full_sync");
+	private static final Histogram INCREMENTAL_SYNC_LATENCY = Metrics.histogram("check_incremental_sync");
+	private static final LongAdder SKIPPED_RUNS = Metrics.counter("check_skipped_runs");
+	private static final LongAdder FAILED_RUNS = Metrics.counter("check_failed_runs");
+	
+	private final long fullSyncIntervalMillis;
+	private final AtomicBoolean running = new AtomicBoolean();
+	
+	// Usati solo dal task in esecuzione (protetti da running)
+	private Timestamp watermark;
+	private long lastFullSync;
+	private final Map<Integer, Long> recentlySeenChanges = Maps.newHashMap();
+	
+	
+	public ActiveBoosterCheckTask(long fullSyncIntervalMillis) {
+		this.fullSyncIntervalMillis = fullSyncIntervalMillis;
+	}
+	
+	
+	/**
+	 * Per continuare da una lettura completa già fatta altrove: il primo controllo sarà incrementale a partire da quell'istante.
+	 */
+	public ActiveBoosterCheckTask(long fullSyncIntervalMillis, Timestamp fullSyncDatabaseTime) {
+		this(fullSyncIntervalMillis);
+		this.watermark = fullSyncDatabaseTime;
+		this.lastFullSync = System.currentTimeMillis();
+	}
+	
+	
 	@Override
 	public void run() {
+		if (!running.compareAndSet(false, true)) {
+			// Il controllo precedente non è ancora finito (database lento)
+			SKIPPED_RUNS.increment();
+			return;
+		}
+		
 		try {
-			List<BoosterImpl> activeBoosters = SQLManager.getAllActiveBoosters();
+			// Prima le attivazioni fatte mentre il database non era raggiungibile, così la lettura successiva le comprende
+			ActivationJournal.replay();
+			
+			long now = System.currentTimeMillis();
+			long startTime = System.nanoTime();
+			if (watermark == null || now - lastFullSync >= fullSyncIntervalMillis) {
+				fullSync(now);
+				FULL_SYNC_LATENCY.recordSince(startTime);
+			} else {
+				incrementalSync(now);
+				INCREMENTAL_SYNC_LATENCY.recordSince(startTime);
+			}
+			
+		} catch (SQLException e) {
+			FAILED_RUNS.increment();
+			e.printStackTrace();
+		} finally {
+			running.set(false);
+		}
+	}
+	
+	
+	private void fullSync(long now) throws SQLException {
+		Timestamp databaseTime = SQLManager.getDatabaseTime();
+		publishCancelled(reconcileFull(SQLManager.getAllActiveBoosters(), now));
+		watermark = databaseTime;
+		lastFullSync = now;
+		recentlySeenChanges.clear();
+	}
+	
+	
+	/**
+	 * Allinea i booster in memoria a tutti quelli attivi sul database. Restituisce quelli annullati prima della scadenza.
+	 */
+	protected List<BoosterImpl> reconcileFull(List<BoosterImpl> activeBoosters, long now) {
+		List<BoosterImpl> cancelledBoosters = Lists.newArrayList();
+		Set<String> changedPlayers = Sets.newHashSet();
+		
+		BoostersPlugin.instance.activeBoosters.modify(activeBoostersByPluginID -> {
+			Map<String, BoosterImpl> loadedBoostersByPluginID = Maps.newHashMapWithExpectedSize(activeBoosters.size());
 			
 			for (BoosterImpl activeBooster : activeBoosters) {
-				BoosterImpl previousBooster = BoostersPlugin.instance.activeBoostersByPluginID.put(activeBooster.getPluginID(), activeBooster);
+				loadedBoostersByPluginID.put(activeBooster.getPluginID(), activeBooster);
+				BoosterImpl previousBooster = activeBoostersByPluginID.get(activeBooster.getPluginID());
 				if (previousBooster == null || activeBooster.getId() != previousBooster.getId()) {
 					// Allora è stato caricato qualcosa di nuovo direttamente dal database
 					// In questo modo il giocatore vede la lista dei booster correttamente aggiornata
-					DBCache.invalidate(activeBooster.getPlayerName());
+					activeBoostersByPluginID.put(activeBooster.getPluginID(), activeBooster);
+					changedPlayers.add(activeBooster.getPlayerName());
 				}
 			}
 			
 			// Cancella i booster non più trovati (magari sono stati annullati tramite database per qualche motivo)
-			Iterator<String> keysIterator = BoostersPlugin.instance.activeBoostersByPluginID.keySet().iterator();
-			mainLoop: while (keysIterator.hasNext()) {
-				String oldPluginID = keysIterator.next();
+			activeBoostersByPluginID.values().removeIf(booster -> {
+				if (loadedBoostersByPluginID.containsKey(booster.getPluginID())) {
+					return false;
+				}
+				if (!booster.isExpired(now)) {
+					cancelledBoosters.add(booster);
+				}
+				return true;
+			});
+		});
+		
+		invalidateCache(changedPlayers);
+		return cancelledBoosters;
+	}
+	
+	
+	private void incrementalSync(long now) throws SQLException {
+		long since = watermark.getTime() - CHANGES_OVERLAP_MILLIS;
+		BoosterChanges changes = SQLManager.getChangedBoosters(new Timestamp(since));
+		publishCancelled(reconcileChanges(changes.getChanges(), now));
+		recentlySeenChanges.values().removeIf(updatedAt -> updatedAt < since);
+		if (changes.getLatestUpdate().after(watermark)) {
+			watermark = changes.getLatestUpdate();
+		}
+	}
+	
+	
+	/**
+	 * Applica ai booster in memoria le righe modificate sul database. Restituisce quelli annullati prima della scadenza.
+	 */
+	protected List<BoosterImpl> reconcileChanges(List<BoosterChanges.Change> changes, long now) {
+		List<BoosterImpl> cancelledBoosters = Lists.newArrayList();
+		Set<String> changedPlayers = Sets.newHashSet();
+		
+		BoostersPlugin.instance.activeBoosters.modify(activeBoostersByPluginID -> {
+			for (BoosterChanges.Change change : changes) {
+				BoosterImpl booster = change.getBooster();
+				
+				Long previousUpdate = recentlySeenChanges.put(booster.getId(), change.getUpdatedAt());
+				if (previousUpdate != null && previousUpdate == change.getUpdatedAt()) {
+					// Già applicato nella lettura precedente (sovrapposizione)
+					continue;
+				}
 				
-				for (BoosterImpl activeBooster : activeBoosters) {
-					if (activeBooster.getPluginID().equals(oldPluginID)) {
-						continue mainLoop;
+				BoosterImpl currentBooster = activeBoostersByPluginID.get(booster.getPluginID());
+				boolean isCurrent = currentBooster != null && currentBooster.getId() == booster.getId();
+				
+				if (booster.wasActivated() && !booster.isExpired(now)) {
+					if (!isCurrent) {
+						activeBoostersByPluginID.put(booster.getPluginID(), booster);
+					}
+				} else if (isCurrent) {
+					// Attivazione annullata tramite database
+					activeBoostersByPluginID.remove(booster.getPluginID());
+					if (!currentBooster.isExpired(now)) {
+						cancelledBoosters.add(currentBooster);
 					}
 				}
 				
-				// Non è stato trovato un booster con lo stesso plugin ID tra quelli attivi: quindi non è più attivo
-				keysIterator.remove();
+				// Anche i booster creati o modificati da altri server devono comparire nella lista del giocatore
+				changedPlayers.add(booster.getPlayerName());
 			}
 			
-		} catch (SQLException e) {
-			e.printStackTrace();
+			// I booster scaduti nel frattempo non generano modifiche sul database
+			activeBoostersByPluginID.values().removeIf(booster -> booster.isExpired(now));
+		});
+		
+		invalidateCache(changedPlayers);
+		return cancelledBoosters;
+	}
+	
+	
+	/*
+	 * Chiamato dopo modify, così il lock delle modifiche ai booster attivi non resta occupato durante l'aggiornamento della cache.
+	 */
+	private void invalidateCache(Set<String> changedPlayers) {
+		for (String playerName : changedPlayers) {
+			DBCache.invalidate(playerName);
+		}
+	}
+	
+	
+	/*
+	 * Gli altri server non possono accorgersi da soli di un'attivazione annullata prima della scadenza, se non al prossimo controllo.
+	 */
+	private void publishCancelled(List<BoosterImpl> cancelledBoosters) {
+		for (BoosterImpl booster : cancelledBoosters) {
+			BoosterEvents.publish(Type.EXPIRED, booster);
 		}
 	}
 }
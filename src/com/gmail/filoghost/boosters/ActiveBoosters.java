@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+import com.gmail.filoghost.boosters.api.BoosterHandle;
+import com.gmail.filoghost.boosters.sql.BoosterImpl;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Booster attivi per plugin ID. I lettori leggono una mappa immutabile con una sola lettura volatile,
+ * le modifiche (rare) creano una nuova copia e aggiornano gli handle già risolti.
+ */
+public class ActiveBoosters {
+	
+	private volatile Map<String, BoosterImpl> snapshot = ImmutableMap.of();
+	private final ConcurrentMap<String, BoosterHandle> handles = Maps.newConcurrentMap();
+	
+	
+	public BoosterImpl get(String pluginID) {
+		return snapshot.get(pluginID);
+	}
+	
+	
+	/**
+	 * Copia immutabile dei booster attivi (anche quelli scaduti ma non ancora rimossi).
+	 */
+	public Map<String, BoosterImpl> getSnapshot() {
+		return snapshot;
+	}
+	
+	
+	public BoosterHandle getHandle(String pluginID) {
+		BoosterHandle handle = handles.get(pluginID);
+		if (handle != null) {
+			return handle;
+		}
+		
+		// Sincronizzato con le modifiche, così un nuovo handle non può perdere un aggiornamento concorrente
+		synchronized (this) {
+			return handles.computeIfAbsent(pluginID, id -> {
+				BoosterHandle newHandle = new BoosterHandle(id);
+				newHandle.update(snapshot.get(id));
+				return newHandle;
+			});
+		}
+	}
+	
+	
+	public void put(BoosterImpl booster) {
+		modify(boosters -> boosters.put(booster.getPluginID(), booster));
+	}
+	
+	
+	/**
+	 * Applica tutte le modifiche a una copia della mappa e la pubblica una sola volta.
+	 */
+	public synchronized void modify(Consumer<Map<String, BoosterImpl>> modifier) {
+		Map<String, BoosterImpl> previousSnapshot = snapshot;
+		Map<String, BoosterImpl> modifiedCopy = Maps.newHashMap(previousSnapshot);
+		modifier.accept(modifiedCopy);
+		
+		if (modifiedCopy.equals(previousSnapshot)) {
+			return;
+		}
+		
+		Map<String, BoosterImpl> newSnapshot = ImmutableMap.copyOf(modifiedCopy);
+		snapshot = newSnapshot;
+		
+		for (BoosterHandle handle : handles.values()) {
+			BoosterImpl booster = newSnapshot.get(handle.getPluginID());
+			if (booster != previousSnapshot.get(handle.getPluginID())) {
+				handle.update(booster);
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.gmail.filoghost.boosters.sql.BoosterImpl;
+import com.google.common.collect.Lists;
+
+/**
+ * Copia locale dei booster attivi, letta all'avvio prima che il database risponda:
+ * così i moltiplicatori restano validi anche se MySQL non è raggiungibile subito dopo un riavvio.
+ * <p>
+ * Formato: magic (4) | versione (1) | numero di booster (4) | booster... | CRC32 (8)
+ */
+public class ActiveBoostersSnapshot {
+	
+	private static final int MAGIC = 0x42535330; // "BSS0"
+	private static final byte VERSION = 1;
+	
+	
+	/**
+	 * Scrive su un file temporaneo, lo salva su disco e lo rinomina, in modo che un arresto improvviso non lasci mai un file a metà.
+	 * I booster già scaduti non vengono salvati.
+	 */
+	public static void write(File file, Collection<BoosterImpl> activeBoosters, long now) throws IOException {
+		List<BoosterImpl> boosters = Lists.newArrayListWithCapacity(activeBoosters.size());
+		for (BoosterImpl booster : activeBoosters) {
+			if (booster.wasActivated() && !booster.isExpired(now)) {
+				boosters.add(booster);
+			}
+		}
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + boosters.size() * 64);
+		DataOutputStream output = new DataOutputStream(bytes);
+		
+		output.writeInt(MAGIC);
+		output.writeByte(VERSION);
+		output.writeInt(boosters.size());
+		for (BoosterImpl booster : boosters) {
+			output.writeInt(booster.getId());
+			output.writeUTF(booster.getPlayerName());
+			output.writeUTF(booster.getPluginID());
+			output.writeInt(booster.getMultiplier());
+			output.writeLong(booster.getDurationMillis());
+			output.writeLong(booster.getActivatedAt());
+		}
+		
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		output.writeLong(crc.getValue());
+		output.flush();
+		
+		File tempFile = new File(file.getPath() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			// Altrimenti dopo un'interruzione di corrente la rinomina potrebbe essere su disco prima del contenuto
+			channel.force(true);
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	
+	/**
+	 * Legge i booster salvati, scartando quelli scaduti nel frattempo. Restituisce una lista vuota se il file non esiste.
+	 */
+	public static List<BoosterImpl> read(File file, long now) throws IOException {
+		if (!file.isFile()) {
+			return Lists.newArrayList();
+		}
+		
+		byte[] content = Files.readAllBytes(file.toPath());
+		if (content.length < 17) {
+			throw new IOException("Truncated snapshot file");
+		}
+		
+		CRC32 crc = new CRC32();
+		crc.update(content, 0, content.length - 8);
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(content));
+		input.skipBytes(content.length - 8);
+		if (input.readLong() != crc.getValue()) {
+			throw new IOException("Corrupted snapshot file (checksum mismatch)");
+		}
+		
+		input = new DataInputStream(new ByteArrayInputStream(content, 0, content.length - 8));
+		if (input.readInt() != MAGIC) {
+			throw new IOException("Not a snapshot file");
+		}
+		byte version = input.readByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported snapshot version " + version);
+		}
+		
+		int count = input.readInt();
+		List<BoosterImpl> boosters = Lists.newArrayListWithCapacity(Math.min(count, 1024));
+		for (int i = 0; i < count; i++) {
+			int id = input.readInt();
+			String playerName = input.readUTF();
+			String pluginID = input.readUTF();
+			int multiplier = input.readInt();
+			long durationMillis = input.readLong();
+			long activatedAt = input.readLong();
+			
+			BoosterImpl booster = new BoosterImpl(playerName, id, pluginID, multiplier, durationMillis, activatedAt);
+			if (!booster.isExpired(now)) {
+				boosters.add(booster);
+			}
+		}
+		return boosters;
+	}
+
+}
@@ -28,21 +28,37 @@
  */
 package com.gmail.filoghost.boosters;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import javax.management.JMException;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import com.gmail.filoghost.boosters.bus.BoosterEvents;
 import com.gmail.filoghost.boosters.command.BoosterAdminCommand;
 import com.gmail.filoghost.boosters.command.BoosterCommand;
+import com.gmail.filoghost.boosters.metrics.Metrics;
+import com.gmail.filoghost.boosters.sql.ActivationJournal;
 import com.gmail.filoghost.boosters.sql.BoosterImpl;
+import com.gmail.filoghost.boosters.sql.DBCache;
+import com.gmail.filoghost.boosters.sql.SQLExecutor;
+import com.gmail.filoghost.boosters.sql.SQLExecutor.Priority;
 import com.gmail.filoghost.boosters.sql.SQLManager;
-import com.gmail.filoghost.boosters.sql.SQLTask;
-import com.google.common.collect.Maps;
+import com.gmail.filoghost.boosters.sql.SlowQueryLog;
 import com.google.common.collect.Sets;
 
+import lombok.Getter;
 import net.cubespace.yamler.YamlerConfigurationException;
 
 public class BoostersPlugin extends JavaPlugin {
@@ -50,7 +66,21 @@ public class BoostersPlugin extends JavaPlugin {
 	public static BoostersPlugin instance;
 	
 	public Set<String> registeredPluginsIDs = Sets.newConcurrentHashSet();
-	public Map<String, BoosterImpl> activeBoostersByPluginID = Maps.newConcurrentMap();
+	public final ActiveBoosters activeBoosters = new ActiveBoosters();
+	
+	@Getter private volatile State state = State.STARTING;
+	private Settings settings;
+	private boolean messageBusEnabled;
+	
+	private File snapshotFile;
+	private Map<String, BoosterImpl> lastSavedSnapshot;
+	
+	
+	@Override
+	public void onLoad() {
+		// Prima di onEnable di qualsiasi plugin, così le API sono utilizzabili anche durante l'avvio
+		instance = this;
+	}
 	
 	
 	@Override
@@ -63,8 +93,6 @@ public class BoostersPlugin extends JavaPlugin {
 			return;
 		}
 		
-		Settings settings;
-		
 		try {
 			settings = new Settings(this);
 			settings.init();
@@ -74,40 +102,191 @@ public class BoostersPlugin extends JavaPlugin {
 			return;
 		}
 		
-		// Database MySQL + lettura iniziale booster attivi
-		try {
-			SQLManager.connect(settings.mysql_host, settings.mysql_port, settings.mysql_database, settings.mysql_user, settings.mysql_pass);
-			SQLManager.createTable();
-			for (BoosterImpl activeBooster : SQLManager.getAllActiveBoosters()) {
-				activeBoostersByPluginID.put(activeBooster.getPluginID(), activeBooster);
+		SQLExecutor.start(settings.sql_executor_threads, settings.sql_executor_queue_size, settings.sql_executor_virtual_threads);
+		DBCache.configure(TimeUnit.SECONDS.toMillis(settings.cache_ttl_seconds), TimeUnit.SECONDS.toMillis(settings.cache_refresh_ahead_seconds), settings.cache_max_size);
+		DBCache.configurePreload(settings.cache_preload_window_ticks, settings.cache_preload_batch_size);
+		SlowQueryLog.configure(settings.slow_query_threshold_millis, TimeUnit.MINUTES.toMillis(settings.slow_query_explain_interval_minutes));
+		
+		// Attivazioni fatte durante un'interruzione del database e non ancora salvate, verranno riapplicate dal task di controllo
+		if (settings.activation_journal_enabled) {
+			try {
+				ActivationJournal.open(new File(getDataFolder(), "activations.journal"), settings.activation_journal_capacity);
+			} catch (IOException ex) {
+				getLogger().log(Level.SEVERE, "Could not open the activation journal, activations will fail while the database is unreachable", ex);
 			}
-					
-		} catch (Exception ex) {
-			ex.printStackTrace();
-			setEnabled(false);
+		}
+		
+		// Booster attivi salvati all'ultimo arresto, validi finché non arriva la risposta del database
+		List<BoosterImpl> savedBoosters = Collections.emptyList();
+		if (settings.snapshot_enabled) {
+			snapshotFile = new File(getDataFolder(), "active-boosters.snapshot");
+			try {
+				savedBoosters = ActiveBoostersSnapshot.read(snapshotFile, System.currentTimeMillis());
+			} catch (IOException ex) {
+				getLogger().log(Level.WARNING, "Could not read the active boosters snapshot, waiting for the database", ex);
+			}
+			
+			long snapshotTicks = settings.snapshot_interval_seconds * 20L;
+			Bukkit.getScheduler().runTaskTimerAsynchronously(this, this::saveSnapshot, snapshotTicks, snapshotTicks);
+		}
+		replaceActiveBoosters(savedBoosters);
+		
+		// Database MySQL + lettura iniziale booster attivi, in background: fino ad allora valgono solo la copia locale e le attivazioni non salvate
+		Bukkit.getScheduler().runTaskAsynchronously(this, new StartupTask(this, settings));
+		
+		// Metriche
+		Metrics.gauge("active_boosters", () -> activeBoosters.getSnapshot().size());
+		if (settings.metrics_jmx_enabled) {
+			try {
+				Metrics.registerMBean();
+			} catch (JMException ex) {
+				getLogger().log(Level.WARNING, "Could not register the metrics MBean", ex);
+			}
+		}
+		if (!settings.metrics_prometheus_file.isEmpty()) {
+			File prometheusFile = new File(settings.metrics_prometheus_file);
+			long prometheusTicks = settings.metrics_prometheus_interval_seconds * 20L;
+			Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
+				try {
+					Metrics.writePrometheusFile(prometheusFile);
+				} catch (IOException ex) {
+					getLogger().log(Level.WARNING, "Could not write metrics to " + prometheusFile, ex);
+				}
+			}, prometheusTicks, prometheusTicks);
+		}
+		
+		Bukkit.getPluginManager().registerEvents(new PlayerListener(), this);
+		
+		new BoosterAdminCommand(settings.import_batch_size);
+		new BoosterCommand();
+	}
+
+
+	/**
+	 * Chiamato sul thread principale quando il database è pronto, con i booster attivi letti all'avvio e l'istante della lettura.
+	 */
+	protected void onDatabaseReady(List<BoosterImpl> loadedBoosters, Timestamp loadedAt) {
+		if (state == State.READY) {
 			return;
 		}
 		
-		// Task per aggiornare periodicamente i booster attivi
-		Bukkit.getScheduler().runTaskTimerAsynchronously(this, new ActiveBoosterCheckTask(), 30 * 20, 30 * 20);
+		// Il database sostituisce quanto letto dalla copia locale (ad esempio i booster annullati nel frattempo)
+		replaceActiveBoosters(loadedBoosters);
+		
+		// Avviato solo ora, altrimenti gli eventi ricevuti durante l'avvio verrebbero cancellati dalla sostituzione qui sopra.
+		// Con il canale tra server attivo le modifiche arrivano subito, il controllo sul database serve solo come rete di sicurezza
+		try {
+			messageBusEnabled = BoosterEvents.start(settings);
+		} catch (Exception ex) {
+			getLogger().log(Level.WARNING, "Could not start the message bus, falling back to database polling only", ex);
+			messageBusEnabled = false;
+		}
 		
-		// Task per tenere SQL attivo
+		// Task per aggiornare periodicamente i booster attivi, che riparte dalla lettura iniziale
+		ActiveBoosterCheckTask activeBoosterCheckTask = new ActiveBoosterCheckTask(TimeUnit.MINUTES.toMillis(settings.active_boosters_full_sync_minutes), loadedAt);
+		long pollTicks = (messageBusEnabled ? settings.message_bus_poll_seconds : settings.active_boosters_poll_seconds) * 20L;
 		Bukkit.getScheduler().runTaskTimer(this, () -> {
-			SQLTask.submitAsync(() -> {
-				SQLManager.checkConnection();
-			}, null);
-		}, 20 * 60 * 20, 20 * 60 * 20);
+			SQLExecutor.submit(activeBoosterCheckTask, Priority.NORMAL);
+		}, pollTicks, pollTicks);
 		
-		new BoosterAdminCommand();
-		new BoosterCommand();
+		// Archiviazione graduale dei booster scaduti, un piccolo blocco alla volta
+		if (settings.archive_enabled) {
+			ArchiveTask archiveTask = new ArchiveTask(settings.archive_chunk_size, TimeUnit.HOURS.toMillis(settings.archive_grace_hours));
+			long archiveTicks = settings.archive_interval_seconds * 20L;
+			Bukkit.getScheduler().runTaskTimer(this, () -> {
+				SQLExecutor.submit(archiveTask, Priority.LOW);
+			}, archiveTicks, archiveTicks);
+		}
+		
+		state = State.READY;
+		getLogger().info("Database ready, " + loadedBoosters.size() + " active boosters loaded");
+		
+		// Le modifiche fatte dopo la lettura iniziale e prima dell'avvio del canale non sono ancora arrivate
+		SQLExecutor.submit(activeBoosterCheckTask, Priority.NORMAL);
+		
+		// I giocatori entrati durante l'avvio non sono stati precaricati
+		for (Player player : Bukkit.getOnlinePlayers()) {
+			DBCache.onJoin(player);
+		}
+	}
+	
+	
+	/*
+	 * Sostituisce tutti i booster attivi con quelli indicati. Le attivazioni non ancora salvate vengono applicate dopo,
+	 * perché sono più recenti sia della copia locale sia di quanto letto dal database.
+	 */
+	private void replaceActiveBoosters(List<BoosterImpl> baseBoosters) {
+		long now = System.currentTimeMillis();
+		List<BoosterImpl> pendingActivations = ActivationJournal.getPendingActivations();
+		
+		activeBoosters.modify(boosters -> {
+			boosters.clear();
+			for (BoosterImpl booster : baseBoosters) {
+				boosters.put(booster.getPluginID(), booster);
+			}
+			for (BoosterImpl pendingActivation : pendingActivations) {
+				if (!pendingActivation.isExpired(now)) {
+					boosters.put(pendingActivation.getPluginID(), pendingActivation);
+				}
+			}
+		});
+	}
+	
+	
+	private synchronized void saveSnapshot() {
+		Map<String, BoosterImpl> currentSnapshot = activeBoosters.getSnapshot();
+		if (currentSnapshot == lastSavedSnapshot) {
+			return;
+		}
+		
+		try {
+			ActiveBoostersSnapshot.write(snapshotFile, currentSnapshot.values(), System.currentTimeMillis());
+			lastSavedSnapshot = currentSnapshot;
+		} catch (IOException ex) {
+			getLogger().log(Level.WARNING, "Could not write the active boosters snapshot", ex);
+		}
+	}
+	
+	
+	public boolean isReady() {
+		return state == State.READY;
+	}
+	
+	
+	protected void setState(State state) {
+		if (this.state != State.READY) {
+			this.state = state;
+		}
 	}
 
 
 	@Override
 	public void onDisable() {
+		if (snapshotFile != null) {
+			saveSnapshot();
+		}
+		Metrics.unregisterMBean();
+		BoosterEvents.stop();
+		SQLExecutor.shutdown();
+		ActivationJournal.close();
 		SQLManager.close();
 	}
 	
 	
+	public static enum State {
+		
+		/**
+		 * Connessione al database in corso, nessun booster attivo.
+		 */
+		STARTING,
+		
+		READY,
+		
+		/**
+		 * L'ultimo tentativo di connessione non è riuscito, verrà ripetuto.
+		 */
+		FAILED;
+		
+	}
 
 }
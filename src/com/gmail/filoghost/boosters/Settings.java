@@ -28,6 +28,9 @@
  */
 package com.gmail.filoghost.boosters;
 
+import java.util.Arrays;
+import java.util.List;
+
 import net.cubespace.yamler.YamlerConfig;
 
 import org.bukkit.plugin.Plugin;
@@ -44,4 +47,54 @@ public class Settings extends YamlerConfig {
 	public String mysql_pass = "toor";
 	public int mysql_port = 3306;
 	
+	public int mysql_pool_min_size = 2;
+	public int mysql_pool_max_size = 8;
+	public int mysql_pool_connection_timeout_seconds = 5;
+	public int mysql_pool_validation_interval_seconds = 30;
+	public int mysql_pool_max_lifetime_minutes = 30;
+	public int mysql_socket_timeout_seconds = 60; // 0 per disattivare, deve superare la query più lenta (anche le migrazioni)
+	
+	public int startup_retry_seconds = 5;
+	public int startup_retry_max_seconds = 60;
+	
+	public boolean snapshot_enabled = true;
+	public int snapshot_interval_seconds = 60;
+	
+	public int sql_executor_threads = 8;
+	public int sql_executor_queue_size = 200;
+	public boolean sql_executor_virtual_threads = false;
+	
+	public int active_boosters_poll_seconds = 5;
+	public int active_boosters_full_sync_minutes = 10;
+	
+	public int cache_ttl_seconds = 30;
+	public int cache_refresh_ahead_seconds = 20;
+	public int cache_max_size = 1000;
+	public int cache_preload_window_ticks = 20;
+	public int cache_preload_batch_size = 100;
+	
+	public String message_bus_type = "none"; // none, loopback, udp
+	public int message_bus_port = 25580;
+	public List<String> message_bus_peers = Arrays.asList(); // host:porta degli altri server
+	public String message_bus_secret = "";
+	public int message_bus_max_age_seconds = 30; // Gli eventi più vecchi vengono scartati, richiede orologi sincronizzati tra i server
+	public int message_bus_poll_seconds = 60;
+	
+	public boolean activation_journal_enabled = true;
+	public int activation_journal_capacity = 1024;
+	
+	public int import_batch_size = 500;
+	
+	public boolean archive_enabled = true;
+	public int archive_chunk_size = 500;
+	public int archive_interval_seconds = 10;
+	public int archive_grace_hours = 24;
+	
+	public boolean metrics_jmx_enabled = true;
+	public String metrics_prometheus_file = ""; // Vuoto per disattivare, ad esempio /var/lib/node_exporter/boosters.prom
+	public int metrics_prometheus_interval_seconds = 15;
+	
+	public int slow_query_threshold_millis = 200; // Negativo per disattivare
+	public int slow_query_explain_interval_minutes = 10;
+	
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+
+import com.gmail.filoghost.boosters.sql.BoosterImpl;
+import com.gmail.filoghost.boosters.sql.SQLManager;
+
+/**
+ * Connessione al database, migrazioni e lettura dei booster attivi, eseguite fuori dal thread principale
+ * in modo che l'avvio del server non dipenda dai tempi di MySQL. Se il database non è raggiungibile
+ * si riprova con un'attesa crescente, invece di disattivare il plugin.
+ */
+public class StartupTask implements Runnable {
+	
+	private final BoostersPlugin plugin;
+	private final Settings settings;
+	private final long minRetryTicks, maxRetryTicks;
+	
+	private int failedAttempts;
+	
+	
+	public StartupTask(BoostersPlugin plugin, Settings settings) {
+		this.plugin = plugin;
+		this.settings = settings;
+		this.minRetryTicks = Math.max(1, settings.startup_retry_seconds) * 20L;
+		this.maxRetryTicks = Math.max(settings.startup_retry_seconds, settings.startup_retry_max_seconds) * 20L;
+	}
+	
+	
+	@Override
+	public void run() {
+		if (!plugin.isEnabled()) {
+			return;
+		}
+		
+		try {
+			if (!SQLManager.isConnected()) {
+				SQLManager.connect(settings);
+			}
+			SQLManager.migrateSchema();
+			// Prima della lettura, così il primo controllo incrementale comprende anche le modifiche fatte durante la lettura
+			Timestamp loadedAt = SQLManager.getDatabaseTime();
+			List<BoosterImpl> loadedBoosters = SQLManager.getAllActiveBoosters();
+			
+			if (!plugin.isEnabled()) {
+				// Disattivato durante l'avvio, dopo che onDisable ha già chiuso il pool
+				SQLManager.close();
+				return;
+			}
+			Bukkit.getScheduler().runTask(plugin, () -> plugin.onDatabaseReady(loadedBoosters, loadedAt));
+			
+		} catch (Exception ex) {
+			failedAttempts++;
+			plugin.setState(BoostersPlugin.State.FAILED);
+			
+			long retryTicks = Math.min(maxRetryTicks, minRetryTicks << Math.min(failedAttempts - 1, 10));
+			plugin.getLogger().log(Level.SEVERE, "Could not initialize the database (attempt " + failedAttempts + "), retrying in " + (retryTicks / 20) + " seconds", ex);
+			
+			if (plugin.isEnabled()) {
+				Bukkit.getScheduler().runTaskLaterAsynchronously(plugin, this, retryTicks);
+			}
+		}
+	}
+
+}
@@ -28,18 +28,11 @@
  */
 package com.gmail.filoghost.boosters;
 
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import lombok.AllArgsConstructor;
-import lombok.Getter;
-import wild.api.util.CaseInsensitiveMap;
 
 public class TimeUtils {
 	
 	private static final int DEFAULT_TIME_UNITS_SHOWN = 2;
-	private static final Pattern TIME_FORMAT_PATTERN = Pattern.compile("([0-9]+)([a-zA-Z]+)");
 	
 	public static final long
 			SECOND_MILLIS = 1000,
@@ -51,157 +44,187 @@ public class TimeUtils {
 			YEAR_MILLIS = DAY_MILLIS * 365;
 	
 	
-	private static Map<String, Long> unitsMillisMap;
-	static {
-		unitsMillisMap = new CaseInsensitiveMap<String, Long>();
-		multiPut(unitsMillisMap, YEAR_MILLIS, "y", "year", "years");
-		multiPut(unitsMillisMap, MONTH_MILLIS, "mo", "month", "months");
-		multiPut(unitsMillisMap, WEEK_MILLIS, "w", "week", "weeks");
-		multiPut(unitsMillisMap, DAY_MILLIS, "d", "day", "days");
-		multiPut(unitsMillisMap, HOUR_MILLIS, "h", "hour", "hours");
-		multiPut(unitsMillisMap, MINUTE_MILLIS, "m", "minute", "minutes");
-		multiPut(unitsMillisMap, SECOND_MILLIS, "s", "second", "seconds");
-	}
+	// Unità mostrate, dalla più grande alla più piccola
+	private static final long[] UNITS_MILLIS = { YEAR_MILLIS, MONTH_MILLIS, WEEK_MILLIS, DAY_MILLIS, HOUR_MILLIS, MINUTE_MILLIS, SECOND_MILLIS };
+	private static final String[] UNITS_PLURAL = { "anni", "mesi", "settimane", "giorni", "ore", "minuti", "secondi" };
+	private static final String[] UNITS_SINGULAR = { "anno", "mese", "settimana", "giorno", "ora", "minuto", "secondo" };
 	
+	private static final int FORMAT_MEMO_SIZE = 256; // Potenza di 2
+	private static final FormattedTimespan[] formatMemo = new FormattedTimespan[FORMAT_MEMO_SIZE];
 	
-	private static void multiPut(Map<String, Long> map, long value, String... keys) {
-		for (String key : keys) {
-			map.put(key, value);
-		}
-	}
+	
+	// Unità accettate in input: ogni riga contiene i millisecondi seguiti dai nomi (senza distinzione tra maiuscole e minuscole)
+	private static final long[] INPUT_UNITS_MILLIS = { YEAR_MILLIS, MONTH_MILLIS, WEEK_MILLIS, DAY_MILLIS, HOUR_MILLIS, MINUTE_MILLIS, SECOND_MILLIS };
+	private static final String[][] INPUT_UNITS_NAMES = {
+		{ "y", "year", "years" },
+		{ "mo", "month", "months" },
+		{ "w", "week", "weeks" },
+		{ "d", "day", "days" },
+		{ "h", "hour", "hours" },
+		{ "m", "minute", "minutes" },
+		{ "s", "second", "seconds" }
+	};
 	
 	
+	/**
+	 * Legge una durata composta da una o più coppie numero + unità di tempo, per esempio "36h" oppure "1d12h30m".
+	 * Il parser scorre la stringa una volta sola e non crea oggetti, tranne l'eccezione in caso di errore.
+	 */
 	public static long readTimespan(String input) throws InvalidTimeFormatException {
-		Matcher matcher = TIME_FORMAT_PATTERN.matcher(input);
-		if (!matcher.matches()) {
+		int length = input.length();
+		if (length == 0) {
 			throw new InvalidTimeFormatException("Il formato del tempo non è valido (deve essere numero + unità di tempo): " + input);
 		}
 		
-		String valueString = matcher.group(1);
-		String unitString = matcher.group(2);
+		long totalMillis = 0;
+		int index = 0;
 		
-		int unitValue;
-		
-		try {
-			unitValue = Integer.parseInt(valueString);
-		} catch (NumberFormatException e) {
-			throw new InvalidTimeFormatException("Numero non valido: " + input);
-		}
-		
-		if (unitValue <= 0) {
-			throw new InvalidTimeFormatException("Il numero deve essere maggiore di zero: " + input);
+		while (index < length) {
+			int numberStart = index;
+			long unitValue = 0;
+			
+			while (index < length && isDigit(input.charAt(index))) {
+				if (unitValue <= Integer.MAX_VALUE) {
+					unitValue = unitValue * 10 + (input.charAt(index) - '0');
+				}
+				index++;
+			}
+			
+			int unitStart = index;
+			while (index < length && isLetter(input.charAt(index))) {
+				index++;
+			}
+			
+			if (numberStart == unitStart || unitStart == index) {
+				throw new InvalidTimeFormatException("Il formato del tempo non è valido (deve essere numero + unità di tempo): " + input);
+			}
+			
+			if (unitValue > Integer.MAX_VALUE) {
+				throw new InvalidTimeFormatException("Numero non valido: " + input);
+			}
+			
+			if (unitValue <= 0) {
+				throw new InvalidTimeFormatException("Il numero deve essere maggiore di zero: " + input);
+			}
+			
+			if (unitValue > 1000) {
+				throw new InvalidTimeFormatException("Il numero è troppo grande (usa un'unità di tempo più grande): " + input);
+			}
+			
+			long unitMillis = findUnitMillis(input, unitStart, index);
+			if (unitMillis < 0) {
+				throw new InvalidTimeFormatException("Unità di tempo non riconosciuta: " + input);
+			}
+			
+			// Con al massimo 1000 anni per parte il prodotto non va in overflow, la somma invece va controllata
+			long partMillis = unitMillis * unitValue;
+			if (totalMillis > Long.MAX_VALUE - partMillis) {
+				throw new InvalidTimeFormatException("Il numero è troppo grande (usa un'unità di tempo più grande): " + input);
+			}
+			totalMillis += partMillis;
 		}
 		
-		if (unitValue > 1000) {
-			throw new InvalidTimeFormatException("Il numero è troppo grande (usa un'unità di tempo più grande): " + input);
-		}
+		return totalMillis;
+	}
+	
+	private static long findUnitMillis(String input, int start, int end) {
+		int length = end - start;
 		
-		if (!unitsMillisMap.containsKey(unitString)) {
-			throw new InvalidTimeFormatException("Unità di tempo non riconosciuta: " + input);
+		for (int i = 0; i < INPUT_UNITS_NAMES.length; i++) {
+			for (String name : INPUT_UNITS_NAMES[i]) {
+				if (name.length() == length && input.regionMatches(true, start, name, 0, length)) {
+					return INPUT_UNITS_MILLIS[i];
+				}
+			}
 		}
 		
-		return unitsMillisMap.get(unitString) * unitValue;
+		return -1;
+	}
+	
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+	
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
 	}
 	
 	public static String formatTimespan(long diff) {
 		return formatTimespan(diff, DEFAULT_TIME_UNITS_SHOWN);
 	}
 	
+	/**
+	 * Il risultato viene memorizzato per qualche istante: molti giocatori che guardano lo stesso booster attivo
+	 * nello stesso secondo condividono la stessa stringa.
+	 */
 	public static String formatTimespan(long diff, int maxTimeUnits) {
-		if (diff % 1000 != 0) {
-			// Arrotondamento per eccesso
-			diff += (1000 - (diff % 1000));
-		}
-		
-		long seconds, minutes, hours, days, weeks, months, years;
-		seconds = minutes = hours = days = weeks = months = years = 0;
-		
-		if (diff >= YEAR_MILLIS) {
-			years = diff / YEAR_MILLIS;
-			diff %= YEAR_MILLIS;
-		}
+		diff = roundUpToSecond(diff);
 		
-		if (diff >= MONTH_MILLIS) {
-			months = diff / MONTH_MILLIS;
-			diff %= MONTH_MILLIS;
+		int memoIndex = (int) ((diff / SECOND_MILLIS) * 31 + maxTimeUnits) & (FORMAT_MEMO_SIZE - 1);
+		FormattedTimespan memo = formatMemo[memoIndex];
+		if (memo != null && memo.roundedDiff == diff && memo.maxTimeUnits == maxTimeUnits) {
+			return memo.text;
 		}
 		
-		if (diff >= WEEK_MILLIS) {
-			weeks = diff / WEEK_MILLIS;
-			diff %= WEEK_MILLIS;
-		}
-		
-		if (diff >= DAY_MILLIS) {
-			days = diff / DAY_MILLIS;
-			diff %= DAY_MILLIS;
-		}
-		
-		if (diff >= HOUR_MILLIS) {
-			hours = diff / HOUR_MILLIS;
-			diff %= HOUR_MILLIS;
-		}
-		
-		if (diff >= MINUTE_MILLIS) {
-			minutes = diff / MINUTE_MILLIS;
-			diff %= MINUTE_MILLIS;
-		}
+		StringBuilder output = new StringBuilder(24);
+		appendRoundedTimespan(output, diff, maxTimeUnits);
+		String text = output.toString();
 		
-		if (diff >= SECOND_MILLIS) {
-			seconds = diff / SECOND_MILLIS;
-			diff %= SECOND_MILLIS;
+		// Gli oggetti sono immutabili, quindi anche una scrittura concorrente lascia l'array in uno stato valido
+		formatMemo[memoIndex] = new FormattedTimespan(diff, maxTimeUnits, text);
+		return text;
+	}
+	
+	public static void appendTimespan(StringBuilder output, long diff) {
+		appendTimespan(output, diff, DEFAULT_TIME_UNITS_SHOWN);
+	}
+	
+	/**
+	 * Come {@link #formatTimespan(long, int)}, ma scrive direttamente nel builder senza creare oggetti intermedi.
+	 */
+	public static void appendTimespan(StringBuilder output, long diff, int maxTimeUnits) {
+		appendRoundedTimespan(output, roundUpToSecond(diff), maxTimeUnits);
+	}
+	
+	private static long roundUpToSecond(long diff) {
+		if (diff % 1000 != 0) {
+			// Arrotondamento per eccesso
+			diff += (1000 - (diff % 1000));
 		}
-		
-		return formatTimeUnits(
-				maxTimeUnits,
-				new NamedTimeUnit(years, "anni", "anno"),
-				new NamedTimeUnit(months, "mesi", "mese"),
-				new NamedTimeUnit(weeks, "settimane", "settimana"),
-				new NamedTimeUnit(days, "giorni", "giorno"),
-				new NamedTimeUnit(hours, "ore", "ora"),
-				new NamedTimeUnit(minutes, "minuti", "minuto"),
-				new NamedTimeUnit(seconds, "secondi", "secondo"));
+		return diff;
 	}
 	
-	private static String formatTimeUnits(int maxTimeUnits, NamedTimeUnit... namedTimeUnits) {
-		StringBuilder output = new StringBuilder();
-		
+	private static void appendRoundedTimespan(StringBuilder output, long diff, int maxTimeUnits) {
 		int count = 0;
-		for (NamedTimeUnit unit : namedTimeUnits) {
-			
-			if (count >= maxTimeUnits) break;
-			
-			if (unit.getValue() != 0) {
+		
+		for (int i = 0; i < UNITS_MILLIS.length && count < maxTimeUnits; i++) {
+			if (diff >= UNITS_MILLIS[i]) {
+				long value = diff / UNITS_MILLIS[i];
+				diff %= UNITS_MILLIS[i];
 				count++;
 				
-				if (output.length() > 0) {
-					output.append(" ");
+				if (count > 1) {
+					output.append(' ');
 				}
 				
-				output.append(unit.getValue());
-				output.append(" ");
-				
-				if (unit.getValue() == 1) {
-					output.append(unit.getSingular());
-				} else {
-					output.append(unit.getPlural());
-				}
+				output.append(value);
+				output.append(' ');
+				output.append(value == 1 ? UNITS_SINGULAR[i] : UNITS_PLURAL[i]);
 			}
 		}
 		
 		if (count == 0) {
-			return formatTimeUnits(1, new NamedTimeUnit(0, "secondi", "secondo"));
+			output.append("0 ").append(UNITS_PLURAL[UNITS_PLURAL.length - 1]);
 		}
-		
-		return output.toString();
 	}
 
 	
 	@AllArgsConstructor
-	@Getter
-	private static class NamedTimeUnit {
+	private static class FormattedTimespan {
 		
-		private long value;
-		private String plural, singular;
+		private final long roundedDiff;
+		private final int maxTimeUnits;
+		private final String text;
 		
 	}
 
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.api;
+
+import com.gmail.filoghost.boosters.sql.BoosterImpl;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Riferimento al booster attivo di un plugin ID, da risolvere una volta sola (ad esempio in onEnable) tramite
+ * {@link BoostersAPI#getBoosterHandle(String)} e da usare nei punti chiamati spesso, come l'assegnazione dei coins.
+ * Le letture non allocano oggetti e non usano lock.
+ */
+public final class BoosterHandle {
+	
+	private static final ActiveEntry NO_BOOSTER = new ActiveEntry(null, 1, Long.MIN_VALUE);
+	
+	@Getter private final String pluginID;
+	private volatile ActiveEntry entry = NO_BOOSTER;
+	
+	
+	public BoosterHandle(String pluginID) {
+		this.pluginID = pluginID;
+	}
+	
+	
+	/**
+	 * Il moltiplicatore del booster attivo, oppure 1 se non ci sono booster attivi.
+	 */
+	public int getMultiplier() {
+		ActiveEntry entry = this.entry;
+		return System.currentTimeMillis() < entry.expiresAt ? entry.multiplier : 1;
+	}
+	
+	
+	public boolean isActive() {
+		return System.currentTimeMillis() < entry.expiresAt;
+	}
+	
+	
+	/**
+	 * Il booster attivo oppure null, come {@link BoostersAPI#getActiveBooster(String)}.
+	 */
+	public Booster getActiveBooster() {
+		ActiveEntry entry = this.entry;
+		return System.currentTimeMillis() < entry.expiresAt ? entry.booster : null;
+	}
+	
+	
+	/**
+	 * Uso interno: chiamato quando cambia il booster attivo per questo plugin ID.
+	 */
+	public void update(BoosterImpl booster) {
+		if (booster != null && booster.wasActivated()) {
+			entry = new ActiveEntry(booster, booster.getMultiplier(), booster.getActivatedAt() + booster.getDurationMillis());
+		} else {
+			entry = NO_BOOSTER;
+		}
+	}
+	
+	
+	@AllArgsConstructor
+	private static class ActiveEntry {
+		
+		private final Booster booster;
+		private final int multiplier;
+		private final long expiresAt;
+		
+	}
+	
+}
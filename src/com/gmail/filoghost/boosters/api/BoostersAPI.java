@@ -28,20 +28,31 @@
  */
 package com.gmail.filoghost.boosters.api;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
 
 import com.gmail.filoghost.boosters.BoostersPlugin;
+import com.gmail.filoghost.boosters.menu.BoosterIconCache;
 import com.gmail.filoghost.boosters.menu.BoostersMenu;
+import com.gmail.filoghost.boosters.metrics.Metrics;
 import com.gmail.filoghost.boosters.sql.BoosterImpl;
 import com.gmail.filoghost.boosters.sql.DBCache;
+import com.gmail.filoghost.boosters.sql.DatabaseUnavailableException;
+import com.gmail.filoghost.boosters.sql.SQLTask;
 
 import lombok.NonNull;
 
 public class BoostersAPI {
 	
+	// Contano le chiamate dagli altri plugin, per capire quanto spesso vengono letti i booster
+	private static final LongAdder GET_ACTIVE_BOOSTER_CALLS = Metrics.counter("api_get_active_booster_calls");
+	private static final LongAdder GET_BOOSTER_HANDLE_CALLS = Metrics.counter("api_get_booster_handle_calls");
+	
 	
 	/**
 	 * Permette ai giocatori di attivare tutti i booster per un determinato plugin (da usare in onEnable).
@@ -49,6 +60,7 @@ public class BoostersAPI {
 	public static void registerPluginID(@NonNull String pluginID) {
 		checkPluginInitialized();
 		BoostersPlugin.instance.registeredPluginsIDs.add(pluginID);
+		BoosterIconCache.invalidate(pluginID);
 	}
 
 
@@ -58,6 +70,7 @@ public class BoostersAPI {
 	public static void unregisterPluginID(@NonNull String pluginID) {
 		checkPluginInitialized();
 		BoostersPlugin.instance.registeredPluginsIDs.remove(pluginID);
+		BoosterIconCache.invalidate(pluginID);
 	}
 	
 	
@@ -65,14 +78,23 @@ public class BoostersAPI {
 	 * Apre il menu dei booster per un giocatore.
 	 */
 	public static void openBoostersMenu(@NonNull Player player) {
-		DBCache.getNonExpiredBoosters(player,
+		if (BoostersPlugin.instance == null || !BoostersPlugin.instance.isReady()) {
+			player.sendMessage(SQLTask.STARTING_UP_MESSAGE);
+			return;
+		}
+		
+		DBCache.getFirstBoostersPage(player,
 			() -> {
 				player.sendMessage(ChatColor.GRAY + "Caricamento in corso...");
 			},
 			(List<BoosterImpl> boostersList) -> {
-				new BoostersMenu(boostersList).open(player);
+				new BoostersMenu(boostersList, 0, Collections.emptyList()).openAndTrack(player);
 			},
 			(Exception error) -> {
+				if (error instanceof RejectedExecutionException || error instanceof DatabaseUnavailableException) {
+					player.sendMessage(SQLTask.OVERLOADED_MESSAGE);
+					return;
+				}
 				player.sendMessage(ChatColor.RED + "Si è verificato un errore durante il caricamento dei booster. Se persiste, contatta lo staff.");
 				error.printStackTrace();
 			}
@@ -83,17 +105,24 @@ public class BoostersAPI {
 	/**
 	 * Restituisce il booster attivo per il determinato plugin oppure null.
 	 * Il booster restituito non è scaduto al momento della chiamata alla funzione.
+	 * Durante l'avvio, prima della lettura dal database, restituisce solo i booster della copia locale (se presente).
 	 */
 	public static Booster getActiveBooster(@NonNull String pluginID) {
+		GET_ACTIVE_BOOSTER_CALLS.increment();
 		checkPluginInitialized();
-		BoosterImpl booster = BoostersPlugin.instance.activeBoostersByPluginID.get(pluginID);
-		long now = System.currentTimeMillis();
-		
-		if (booster != null && !booster.isExpired(now)) {
-			return booster;
-		} else {
-			return null;
-		}
+		return BoostersPlugin.instance.activeBoosters.getHandle(pluginID).getActiveBooster();
+	}
+	
+	
+	/**
+	 * Restituisce un riferimento sempre aggiornato al booster attivo per il determinato plugin.
+	 * Conviene ottenerlo una volta sola e salvarlo, se il moltiplicatore viene letto molto spesso.
+	 * Si può ottenere anche durante l'avvio: si aggiornerà quando i booster saranno letti dal database.
+	 */
+	public static BoosterHandle getBoosterHandle(@NonNull String pluginID) {
+		GET_BOOSTER_HANDLE_CALLS.increment();
+		checkPluginInitialized();
+		return BoostersPlugin.instance.activeBoosters.getHandle(pluginID);
 	}
 	
 	
@@ -109,7 +138,8 @@ public class BoostersAPI {
 	
 	private static void checkPluginInitialized() {
 		if (BoostersPlugin.instance == null) {
-			throw new IllegalStateException("Plugin not yet initialized");
+			// Succede solo se chiamato prima del caricamento di Boosters (manca la dipendenza nel plugin.yml)
+			throw new IllegalStateException("Boosters is not loaded yet, add it to the dependencies of the calling plugin");
 		}
 	}
 
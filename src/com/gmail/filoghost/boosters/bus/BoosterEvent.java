@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.bus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import com.gmail.filoghost.boosters.sql.BoosterImpl;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Modifica di un booster avvenuta su un server, da comunicare agli altri.
+ */
+@AllArgsConstructor
+@Getter
+public class BoosterEvent {
+	
+	private static final int MAGIC = 0x42535452;
+	private static final byte FORMAT_VERSION = 1;
+	
+	private final Type type;
+	private final BoosterImpl booster;
+	
+	
+	public byte[] encode() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeByte(FORMAT_VERSION);
+			out.writeByte(type.ordinal());
+			out.writeUTF(booster.getPlayerName());
+			out.writeInt(booster.getId());
+			out.writeUTF(booster.getPluginID());
+			out.writeInt(booster.getMultiplier());
+			out.writeLong(booster.getDurationMillis());
+			out.writeBoolean(booster.wasActivated());
+			out.writeLong(booster.wasActivated() ? booster.getActivatedAt() : 0);
+		} catch (IOException e) {
+			// Non può succedere scrivendo in memoria
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+	
+	
+	public static BoosterEvent decode(byte[] data, int offset, int length) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a booster event");
+		}
+		byte formatVersion = in.readByte();
+		if (formatVersion != FORMAT_VERSION) {
+			throw new IOException("Unsupported booster event version " + formatVersion);
+		}
+		
+		int typeOrdinal = in.readByte();
+		if (typeOrdinal < 0 || typeOrdinal >= Type.values().length) {
+			throw new IOException("Unknown booster event type " + typeOrdinal);
+		}
+		
+		String playerName = in.readUTF();
+		int id = in.readInt();
+		String pluginID = in.readUTF();
+		int multiplier = in.readInt();
+		long durationMillis = in.readLong();
+		boolean activated = in.readBoolean();
+		long activatedAt = in.readLong();
+		
+		return new BoosterEvent(Type.values()[typeOrdinal], new BoosterImpl(playerName, id, pluginID, multiplier, durationMillis, activated ? activatedAt : null));
+	}
+	
+	
+	public static enum Type {
+		
+		/**
+		 * Un booster è stato attivato.
+		 */
+		ACTIVATED,
+		
+		/**
+		 * Un booster è stato dato a un giocatore (l'ID non è noto, vale 0).
+		 */
+		CREATED,
+		
+		/**
+		 * Un booster attivo è stato rimosso dal database prima della sua scadenza naturale.
+		 * La scadenza per tempo non viene comunicata: ogni server la calcola da sé a partire dalla data di attivazione.
+		 */
+		EXPIRED;
+		
+	}
+
+}
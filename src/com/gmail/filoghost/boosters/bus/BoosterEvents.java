@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.bus;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import com.gmail.filoghost.boosters.BoostersPlugin;
+import com.gmail.filoghost.boosters.Settings;
+import com.gmail.filoghost.boosters.bus.BoosterEvent.Type;
+import com.gmail.filoghost.boosters.sql.BoosterImpl;
+import com.gmail.filoghost.boosters.sql.DBCache;
+import com.google.common.collect.Lists;
+
+/**
+ * Pubblica le modifiche fatte da questo server e applica quelle ricevute dagli altri,
+ * aggiornando i booster attivi e la cache entro pochi millisecondi invece di aspettare il controllo periodico.
+ */
+public class BoosterEvents {
+	
+	private static MessageBus messageBus;
+	
+	
+	/**
+	 * Avvia il canale configurato. Restituisce false se è disattivato.
+	 */
+	public static boolean start(Settings settings) throws IOException {
+		MessageBus configuredBus;
+		
+		switch (settings.message_bus_type.toLowerCase(Locale.ROOT)) {
+			case "none":
+				return false;
+			case "loopback":
+				configuredBus = new LoopbackMessageBus();
+				break;
+			case "udp":
+				configuredBus = new UdpMessageBus(settings.message_bus_port, parsePeers(settings.message_bus_peers), settings.message_bus_secret, TimeUnit.SECONDS.toMillis(settings.message_bus_max_age_seconds));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown message bus type: " + settings.message_bus_type);
+		}
+		
+		configuredBus.start(BoosterEvents::handle);
+		messageBus = configuredBus;
+		return true;
+	}
+	
+	
+	public static void stop() {
+		if (messageBus != null) {
+			messageBus.close();
+			messageBus = null;
+		}
+	}
+	
+	
+	public static void publish(Type type, BoosterImpl booster) {
+		MessageBus messageBus = BoosterEvents.messageBus;
+		if (messageBus == null) {
+			return;
+		}
+		
+		try {
+			messageBus.publish(new BoosterEvent(type, booster));
+		} catch (Exception e) {
+			// Non deve mai far fallire l'operazione che ha generato l'evento
+			BoostersPlugin.instance.getLogger().log(Level.WARNING, "Could not publish booster event", e);
+		}
+	}
+	
+	
+	/*
+	 * Gli eventi possono arrivare duplicati o in ritardo, quindi ogni modifica deve poter essere applicata più volte.
+	 */
+	private static void handle(BoosterEvent event) {
+		BoosterImpl booster = event.getBooster();
+		
+		switch (event.getType()) {
+			case ACTIVATED:
+				if (booster.wasActivated() && !booster.isExpired(System.currentTimeMillis())) {
+					BoostersPlugin.instance.activeBoosters.modify(activeBoostersByPluginID -> {
+						BoosterImpl currentBooster = activeBoostersByPluginID.get(booster.getPluginID());
+						if (currentBooster == null || currentBooster.getId() != booster.getId()) {
+							activeBoostersByPluginID.put(booster.getPluginID(), booster);
+						}
+					});
+				}
+				break;
+			case EXPIRED:
+				BoostersPlugin.instance.activeBoosters.modify(activeBoostersByPluginID -> {
+					BoosterImpl currentBooster = activeBoostersByPluginID.get(booster.getPluginID());
+					if (currentBooster != null && currentBooster.getId() == booster.getId()) {
+						activeBoostersByPluginID.remove(booster.getPluginID());
+					}
+				});
+				break;
+			case CREATED:
+				break;
+		}
+		
+		// In ogni caso la lista dei booster del giocatore è cambiata
+		DBCache.invalidate(booster.getPlayerName());
+	}
+	
+	
+	private static List<InetSocketAddress> parsePeers(List<String> peers) {
+		List<InetSocketAddress> addresses = Lists.newArrayList();
+		for (String peer : peers) {
+			int separatorIndex = peer.lastIndexOf(':');
+			if (separatorIndex <= 0) {
+				throw new IllegalArgumentException("Invalid message bus peer (expected host:port): " + peer);
+			}
+			addresses.add(new InetSocketAddress(peer.substring(0, separatorIndex).trim(), Integer.parseInt(peer.substring(separatorIndex + 1).trim())));
+		}
+		return addresses;
+	}
+
+}
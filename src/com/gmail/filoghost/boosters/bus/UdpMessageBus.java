@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.bus;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.gmail.filoghost.boosters.BoostersPlugin;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Invia ogni evento con un datagramma UDP a tutti gli altri server configurati.
+ * Ogni pacchetto è firmato con una chiave condivisa, per scartare quelli che non provengono dai server della rete.
+ * La firma comprende anche il mittente, un numero di sequenza e l'istante di invio, così un pacchetto intercettato
+ * non può essere reinviato più tardi né ripetuto.
+ */
+public class UdpMessageBus implements MessageBus {
+	
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+	private static final int MAC_LENGTH = 32;
+	private static final int MAX_PACKET_SIZE = 1024;
+	
+	// Mittente (8) | sequenza (8) | istante di invio (8), prima dell'evento
+	private static final int HEADER_LENGTH = 24;
+	
+	// Pacchetti arrivati fuori ordine ancora accettati, purché non già ricevuti
+	private static final int SEQUENCE_WINDOW = 64;
+	private static final int MAX_TRACKED_SENDERS = 64;
+	
+	private final int port;
+	private final List<InetSocketAddress> peers;
+	private final SecretKeySpec secretKey;
+	private final long maxAgeMillis;
+	
+	// Casuale a ogni avvio, così la sequenza può ripartire da zero senza che i pacchetti vengano scambiati per ripetizioni
+	private final long senderID = new SecureRandom().nextLong();
+	private final AtomicLong nextSequence = new AtomicLong();
+	
+	// Usata solo dal thread in ricezione
+	private final Map<Long, ReceivedSequences> receivedBySender = Maps.newHashMap();
+	
+	private DatagramSocket socket;
+	private Thread receiverThread;
+	
+	
+	public UdpMessageBus(int port, List<InetSocketAddress> peers, String secret, long maxAgeMillis) {
+		if (secret == null || secret.isEmpty()) {
+			throw new IllegalArgumentException("A shared secret is required for the UDP message bus");
+		}
+		
+		this.port = port;
+		this.peers = ImmutableList.copyOf(peers);
+		this.secretKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+		this.maxAgeMillis = maxAgeMillis;
+	}
+	
+	
+	@Override
+	public void start(Consumer<BoosterEvent> listener) throws IOException {
+		socket = new DatagramSocket(port);
+		
+		receiverThread = new Thread(() -> receiveLoop(listener), "Boosters message bus");
+		receiverThread.setDaemon(true);
+		receiverThread.start();
+	}
+	
+	
+	@Override
+	public void publish(BoosterEvent event) {
+		byte[] payload = event.encode();
+		int signedLength = HEADER_LENGTH + payload.length;
+		
+		byte[] packetData = new byte[signedLength + MAC_LENGTH];
+		ByteBuffer.wrap(packetData)
+			.putLong(senderID)
+			.putLong(nextSequence.getAndIncrement())
+			.putLong(System.currentTimeMillis())
+			.put(payload);
+		System.arraycopy(sign(packetData, signedLength), 0, packetData, signedLength, MAC_LENGTH);
+		
+		for (InetSocketAddress peer : peers) {
+			try {
+				socket.send(new DatagramPacket(packetData, packetData.length, peer));
+			} catch (IOException e) {
+				// Gli altri server riceveranno comunque la modifica con il controllo periodico
+				BoostersPlugin.instance.getLogger().log(Level.WARNING, "Could not send booster event to " + peer, e);
+			}
+		}
+	}
+	
+	
+	@Override
+	public void close() {
+		if (socket != null) {
+			socket.close(); // Sblocca anche il thread in ricezione
+		}
+	}
+	
+	
+	private void receiveLoop(Consumer<BoosterEvent> listener) {
+		byte[] buffer = new byte[MAX_PACKET_SIZE];
+		DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+		
+		while (!socket.isClosed()) {
+			try {
+				packet.setLength(buffer.length);
+				socket.receive(packet);
+				
+				int signedLength = packet.getLength() - MAC_LENGTH;
+				if (signedLength <= HEADER_LENGTH || !MessageDigest.isEqual(sign(buffer, signedLength), Arrays.copyOfRange(buffer, signedLength, packet.getLength()))) {
+					BoostersPlugin.instance.getLogger().warning("Discarded unsigned booster event from " + packet.getSocketAddress());
+					continue;
+				}
+				
+				ByteBuffer header = ByteBuffer.wrap(buffer, 0, HEADER_LENGTH);
+				long sender = header.getLong();
+				long sequence = header.getLong();
+				long sentAt = header.getLong();
+				
+				long now = System.currentTimeMillis();
+				if (Math.abs(now - sentAt) > maxAgeMillis) {
+					BoostersPlugin.instance.getLogger().warning("Discarded booster event from " + packet.getSocketAddress() + " sent " + (now - sentAt) + "ms ago, check that the server clocks are synchronized");
+					continue;
+				}
+				if (!markReceived(sender, sequence, sentAt)) {
+					BoostersPlugin.instance.getLogger().warning("Discarded repeated booster event from " + packet.getSocketAddress());
+					continue;
+				}
+				
+				listener.accept(BoosterEvent.decode(buffer, HEADER_LENGTH, signedLength - HEADER_LENGTH));
+				
+			} catch (SocketException e) {
+				// Socket chiuso
+				return;
+			} catch (Exception e) {
+				BoostersPlugin.instance.getLogger().log(Level.WARNING, "Could not handle booster event from " + packet.getSocketAddress(), e);
+			}
+		}
+	}
+	
+	
+	/*
+	 * Restituisce false se la sequenza è già stata ricevuta o è troppo vecchia per saperlo.
+	 */
+	private boolean markReceived(long sender, long sequence, long sentAt) {
+		ReceivedSequences received = receivedBySender.get(sender);
+		if (received == null) {
+			if (receivedBySender.size() >= MAX_TRACKED_SENDERS) {
+				// Mittenti non più attivi (server riavviati): i loro pacchetti sarebbero comunque scartati perché troppo vecchi
+				long oldestAllowed = System.currentTimeMillis() - maxAgeMillis;
+				receivedBySender.values().removeIf(sequences -> sequences.lastSentAt < oldestAllowed);
+			}
+			received = new ReceivedSequences();
+			receivedBySender.put(sender, received);
+			
+		} else if (sequence <= received.highest) {
+			long distance = received.highest - sequence;
+			if (distance >= SEQUENCE_WINDOW || (received.window & (1L << distance)) != 0) {
+				return false;
+			}
+			received.window |= 1L << distance;
+			return true;
+		}
+		
+		// Nuova sequenza più alta: la finestra scorre in avanti
+		long shift = sequence - received.highest;
+		received.window = shift >= SEQUENCE_WINDOW ? 1L : (received.window << shift) | 1L;
+		received.highest = sequence;
+		received.lastSentAt = sentAt;
+		return true;
+	}
+	
+	
+	private byte[] sign(byte[] data, int length) {
+		try {
+			Mac mac = Mac.getInstance(MAC_ALGORITHM);
+			mac.init(secretKey);
+			mac.update(data, 0, length);
+			return mac.doFinal();
+		} catch (GeneralSecurityException e) {
+			// HmacSHA256 è sempre disponibile
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	
+	private static class ReceivedSequences {
+		
+		private long highest = -1;
+		private long window; // Il bit i indica se è stata ricevuta la sequenza highest - i
+		private long lastSentAt;
+		
+	}
+
+}
@@ -28,15 +28,25 @@
  */
 package com.gmail.filoghost.boosters.command;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
 
 import org.bukkit.command.CommandSender;
 
 import com.gmail.filoghost.boosters.BoostersPlugin;
 import com.gmail.filoghost.boosters.InvalidTimeFormatException;
 import com.gmail.filoghost.boosters.TimeUtils;
+import com.gmail.filoghost.boosters.metrics.Histogram;
+import com.gmail.filoghost.boosters.metrics.Metrics;
+import com.gmail.filoghost.boosters.sql.BoosterFilter;
 import com.gmail.filoghost.boosters.sql.BoosterImpl;
+import com.gmail.filoghost.boosters.sql.SQLExecutor.Priority;
 import com.gmail.filoghost.boosters.sql.SQLManager;
 import com.gmail.filoghost.boosters.sql.SQLTask;
 import com.google.common.base.Joiner;
@@ -48,8 +58,13 @@ import wild.api.command.SubCommandFramework;
 @Permission("boosters.admin")
 public class BoosterAdminCommand extends SubCommandFramework {
 
-	public BoosterAdminCommand() {
+	private static final int VIEW_PAGE_SIZE = 20;
+
+	private final int importBatchSize;
+
+	public BoosterAdminCommand(int importBatchSize) {
 		super(BoostersPlugin.instance, "boosteradmin");
+		this.importBatchSize = importBatchSize;
 	}
 
 	@Override
@@ -71,16 +86,8 @@ public class BoosterAdminCommand extends SubCommandFramework {
 	public void add(CommandSender sender, String label, String[] args) {
 		String playerName = args[0];
 		String pluginID = args[1];
-		int multiplier = CommandValidate.getInteger(args[2]);
-		CommandValidate.isTrue(2 <= multiplier && multiplier <= 100, "Il moltiplicatore deve essere tra 2 e 100");
-		
-		long durationMillis;
-		try {
-			durationMillis = TimeUtils.readTimespan(args[3]);
-		} catch (InvalidTimeFormatException e) {
-			throw new ExecuteException(e.getMessage());
-		}
-		CommandValidate.isTrue(durationMillis <= TimeUnit.DAYS.toMillis(30), "La durata non può essere maggiore di 30 giorni.");
+		int multiplier = readMultiplier(args[2]);
+		long durationMillis = readDuration(args[3]);
 		
 		SQLTask.submitAsync(() -> {
 			SQLManager.createBooster(playerName, pluginID, multiplier, durationMillis);
@@ -89,23 +96,96 @@ public class BoosterAdminCommand extends SubCommandFramework {
 		
 	}
 	
+	@SubCommand("import")
+	@SubCommandUsage("<file>")
+	@SubCommandMinArgs(1)
+	public void importFile(CommandSender sender, String label, String[] args) {
+		File dataFolder = BoostersPlugin.instance.getDataFolder();
+		File file = new File(dataFolder, args[0]);
+		
+		try {
+			CommandValidate.isTrue(file.getCanonicalFile().toPath().startsWith(dataFolder.getCanonicalFile().toPath()), "Il file deve trovarsi nella cartella del plugin.");
+		} catch (IOException e) {
+			throw new ExecuteException("Percorso del file non valido.");
+		}
+		CommandValidate.isTrue(file.isFile(), "File non trovato: " + args[0]);
+		
+		sender.sendMessage(ChatColor.GRAY + "Importazione di " + file.getName() + " in corso...");
+		SQLTask.submitAsync(new BoosterImportTask(file, importBatchSize, sender), sender);
+	}
+	
+	@SubCommand("stats")
+	public void stats(CommandSender sender, String label, String[] args) {
+		sender.sendMessage(ChatColor.DARK_GREEN + "Stato attuale:");
+		for (Entry<String, LongSupplier> entry : Metrics.getGauges().entrySet()) {
+			sender.sendMessage(ChatColor.GREEN + "- " + entry.getKey() + ": " + ChatColor.WHITE + entry.getValue().getAsLong());
+		}
+		
+		sender.sendMessage(ChatColor.DARK_GREEN + "Contatori (dall'avvio):");
+		for (Entry<String, LongAdder> entry : Metrics.getCounters().entrySet()) {
+			sender.sendMessage(ChatColor.GREEN + "- " + entry.getKey() + ": " + ChatColor.WHITE + entry.getValue().sum());
+		}
+		
+		sender.sendMessage(ChatColor.DARK_GREEN + "Tempi (dall'avvio):");
+		for (Entry<String, Histogram> entry : Metrics.getHistograms().entrySet()) {
+			Histogram histogram = entry.getValue();
+			if (histogram.getCount() == 0) {
+				continue;
+			}
+			sender.sendMessage(ChatColor.GREEN + "- " + entry.getKey() + ": " + ChatColor.WHITE + histogram.getCount() + " volte, "
+					+ String.format(Locale.ROOT, "media %.1fms, p50 %.1fms, p99 %.1fms", histogram.getAverageMillis(), histogram.getPercentileMillis(0.5), histogram.getPercentileMillis(0.99)));
+		}
+	}
+	
 	@SubCommand("view")
-	@SubCommandUsage("<player>")
+	@SubCommandUsage("<player> [afterID]")
 	@SubCommandMinArgs(1)
 	public void view(CommandSender sender, String label, String[] args) {
 		String playerName = args[0];
+		int afterID = args.length > 1 ? CommandValidate.getInteger(args[1]) : 0;
+		CommandValidate.isTrue(afterID >= 0, "L'ID non può essere negativo.");
 		
 		SQLTask.submitAsync(() -> {
-			List<BoosterImpl> boosters = SQLManager.getNonExpiredBoosters(playerName);
-			if (boosters.size() > 0) {
-				sender.sendMessage(ChatColor.DARK_GREEN + "Booster di " + playerName + " (" + boosters.size() + "):");
-				for (BoosterImpl booster : boosters) {
-					sender.sendMessage(ChatColor.GREEN + "- " + (booster.wasActivated() ? "(ATTIVO) " : "") + "Plugin " + booster.getPluginID() + ", x" + booster.getMultiplier() + ", durata " + TimeUtils.formatTimespan(booster.getDurationMillis()));
-				}
-			} else {
-				sender.sendMessage(ChatColor.RED + playerName + " non ha nessun booster attivabile.");
+			BoosterFilter filter = BoosterFilter.forPlayer(playerName);
+			List<BoosterImpl> boosters = SQLManager.getBoosters(filter, afterID, VIEW_PAGE_SIZE + 1);
+			if (boosters.isEmpty()) {
+				sender.sendMessage(ChatColor.RED + playerName + (afterID > 0 ? " non ha altri booster attivabili." : " non ha nessun booster attivabile."));
+				return;
 			}
-		}, sender);
+			
+			boolean hasMore = boosters.size() > VIEW_PAGE_SIZE;
+			if (hasMore) {
+				boosters = boosters.subList(0, VIEW_PAGE_SIZE);
+			}
+			
+			sender.sendMessage(ChatColor.DARK_GREEN + "Booster di " + playerName + " (" + SQLManager.countBoosters(filter) + "):");
+			for (BoosterImpl booster : boosters) {
+				sender.sendMessage(ChatColor.GREEN + "- #" + booster.getId() + " " + (booster.wasActivated() ? "(ATTIVO) " : "") + "Plugin " + booster.getPluginID() + ", x" + booster.getMultiplier() + ", durata " + TimeUtils.formatTimespan(booster.getDurationMillis()));
+			}
+			if (hasMore) {
+				sender.sendMessage(ChatColor.GRAY + "Per i successivi: /" + label + " view " + playerName + " " + boosters.get(boosters.size() - 1).getId());
+			}
+		}, sender, Priority.LOW);
+	}
+	
+	/*
+	 * Regole comuni all'aggiunta di un singolo booster e all'importazione da file.
+	 */
+	protected static int readMultiplier(String input) {
+		int multiplier = CommandValidate.getInteger(input);
+		CommandValidate.isTrue(2 <= multiplier && multiplier <= 100, "Il moltiplicatore deve essere tra 2 e 100");
+		return multiplier;
+	}
+	
+	protected static long readDuration(String input) {
+		long durationMillis;
+		try {
+			durationMillis = TimeUtils.readTimespan(input);
+		} catch (InvalidTimeFormatException e) {
+			throw new ExecuteException(e.getMessage());
+		}
+		CommandValidate.isTrue(durationMillis <= TimeUnit.DAYS.toMillis(30), "La durata non può essere maggiore di 30 giorni.");
+		return durationMillis;
 	}
 	
 }
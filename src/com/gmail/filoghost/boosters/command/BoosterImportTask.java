@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.command;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import com.gmail.filoghost.boosters.sql.BoosterImpl;
+import com.gmail.filoghost.boosters.sql.SQLManager;
+import com.gmail.filoghost.boosters.sql.SQLTask;
+import com.google.common.collect.Lists;
+
+import lombok.Cleanup;
+import lombok.RequiredArgsConstructor;
+import wild.api.command.CommandFramework.ExecuteException;
+
+/**
+ * Importa i booster da un file CSV con una riga per booster: giocatore,pluginID,moltiplicatore,durata
+ * Il file viene letto una riga alla volta e le righe valide vengono inserite a gruppi, ognuno in una transazione.
+ */
+@RequiredArgsConstructor
+public class BoosterImportTask implements SQLTask {
+	
+	private static final int MAX_REPORTED_ERRORS = 20;
+	
+	// Lunghezza delle colonne nel database
+	private static final int MAX_PLAYER_NAME_LENGTH = 20;
+	private static final int MAX_PLUGIN_ID_LENGTH = 30;
+	
+	private final File file;
+	private final int batchSize;
+	private final CommandSender sender;
+	
+	private List<BoosterImpl> batch;
+	private int importedRows, invalidRows;
+	
+	
+	@Override
+	public void execute() throws SQLException {
+		batch = Lists.newArrayListWithCapacity(batchSize);
+		int lineNumber = 0;
+		
+		try {
+			@Cleanup BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+			String line;
+			
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#") || (lineNumber == 1 && line.toLowerCase(Locale.ROOT).startsWith("player,"))) {
+					continue;
+				}
+				
+				try {
+					batch.add(parseRow(line));
+				} catch (ExecuteException e) {
+					onInvalidRow(lineNumber, e.getMessage());
+					continue;
+				}
+				
+				if (batch.size() >= batchSize) {
+					flushBatch(lineNumber);
+				}
+			}
+			
+		} catch (IOException e) {
+			sender.sendMessage(ChatColor.RED + "Errore durante la lettura del file alla riga " + (lineNumber + 1) + ": " + e.getMessage());
+			sender.sendMessage(ChatColor.RED + "Importazione interrotta, " + importedRows + " booster importati fino a questo punto.");
+			return;
+		}
+		
+		flushBatch(lineNumber);
+		
+		if (invalidRows > MAX_REPORTED_ERRORS) {
+			sender.sendMessage(ChatColor.RED + "...e altre " + (invalidRows - MAX_REPORTED_ERRORS) + " righe non valide.");
+		}
+		sender.sendMessage(ChatColor.GREEN + "Importazione completata: " + importedRows + " booster importati, " + invalidRows + " righe non valide.");
+	}
+	
+	
+	private BoosterImpl parseRow(String line) {
+		String[] fields = line.split(",", -1);
+		if (fields.length != 4) {
+			throw new ExecuteException("Sono richiesti 4 campi (giocatore,pluginID,moltiplicatore,durata), trovati " + fields.length + ".");
+		}
+		
+		String playerName = fields[0].trim();
+		String pluginID = fields[1].trim();
+		if (playerName.isEmpty() || playerName.length() > MAX_PLAYER_NAME_LENGTH) {
+			throw new ExecuteException("Nome del giocatore non valido.");
+		}
+		if (pluginID.isEmpty() || pluginID.length() > MAX_PLUGIN_ID_LENGTH) {
+			throw new ExecuteException("Plugin ID non valido.");
+		}
+		
+		int multiplier = BoosterAdminCommand.readMultiplier(fields[2].trim());
+		long durationMillis = BoosterAdminCommand.readDuration(fields[3].trim());
+		
+		return new BoosterImpl(playerName, 0, pluginID, multiplier, durationMillis, null);
+	}
+	
+	
+	private void flushBatch(int lineNumber) throws SQLException {
+		if (batch.isEmpty()) {
+			return;
+		}
+		
+		try {
+			SQLManager.createBoosters(batch);
+		} catch (SQLException e) {
+			// Il gruppo è stato annullato per intero, quelli precedenti restano salvati
+			sender.sendMessage(ChatColor.RED + "Errore del database durante l'inserimento delle righe fino alla " + lineNumber + ", importazione interrotta.");
+			sender.sendMessage(ChatColor.RED + "" + importedRows + " booster importati prima dell'errore, il gruppo fallito (" + batch.size() + " righe) non è stato salvato.");
+			throw e;
+		}
+		
+		importedRows += batch.size();
+		batch.clear();
+		sender.sendMessage(ChatColor.GRAY + "Importati " + importedRows + " booster (riga " + lineNumber + ")...");
+	}
+	
+	
+	private void onInvalidRow(int lineNumber, String message) {
+		invalidRows++;
+		if (invalidRows <= MAX_REPORTED_ERRORS) {
+			sender.sendMessage(ChatColor.RED + "Riga " + lineNumber + ": " + message);
+		}
+	}
+
+}
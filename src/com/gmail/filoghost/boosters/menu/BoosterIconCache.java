@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.menu;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.text.WordUtils;
+import org.bukkit.ChatColor;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+import com.gmail.filoghost.boosters.TimeUtils;
+import com.gmail.filoghost.boosters.sql.BoosterImpl;
+import com.google.common.collect.ImmutableList;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * Parti delle icone dei booster che non cambiano tra un'apertura del menu e l'altra: sono uguali per tutti i booster
+ * con lo stesso plugin ID, moltiplicatore, durata e stato, quindi vengono calcolate una volta sola.
+ */
+public class BoosterIconCache {
+	
+	private static final int MAX_SIZE = 512;
+	
+	private static final Map<TemplateKey, IconTemplate> templates = new LinkedHashMap<TemplateKey, IconTemplate>(64, 0.75f, true) {
+		
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<TemplateKey, IconTemplate> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+	
+	
+	public static IconTemplate getTemplate(BoosterImpl booster, IconState state) {
+		TemplateKey key = new TemplateKey(booster.getPluginID(), booster.getMultiplier(), booster.getDurationMillis(), state);
+		
+		synchronized (templates) {
+			IconTemplate template = templates.get(key);
+			if (template == null) {
+				template = createTemplate(key);
+				templates.put(key, template);
+			}
+			return template;
+		}
+	}
+	
+	
+	/**
+	 * Da chiamare quando un plugin ID viene registrato o rimosso.
+	 */
+	public static void invalidate(String pluginID) {
+		synchronized (templates) {
+			for (Iterator<TemplateKey> iter = templates.keySet().iterator(); iter.hasNext();) {
+				if (iter.next().pluginID.equals(pluginID)) {
+					iter.remove();
+				}
+			}
+		}
+	}
+	
+	
+	private static IconTemplate createTemplate(TemplateKey key) {
+		String name = ChatColor.BLUE + "Booster " + getUserFriendlyName(key.pluginID);
+		List<String> loreHeader = ImmutableList.of(
+			ChatColor.GRAY + "Moltiplicatore " + getMultipliedUnit(key.pluginID) + ": " + ChatColor.GOLD + "x" + key.multiplier,
+			ChatColor.GRAY + "Durata: " + ChatColor.LIGHT_PURPLE + TimeUtils.formatTimespan(key.durationMillis),
+			""
+		);
+		
+		switch (key.state) {
+			case ACTIVE:
+				// L'ultima riga contiene il tempo rimasto e viene aggiunta dal menu
+				return new IconTemplate(name, loreHeader, null, new PotionEffect(PotionEffectType.JUMP, 1, 1), true);
+			case ACTIVATABLE:
+				return new IconTemplate(name, loreHeader, ChatColor.YELLOW + "CLICCA PER ATTIVARE", new PotionEffect(PotionEffectType.WATER_BREATHING, 1, 1), false);
+			case NOT_ACTIVATABLE:
+				return new IconTemplate(name, loreHeader, ChatColor.DARK_GRAY + "NON ATTIVABILE IN QUESTA MODALITA'", null, false);
+			case EXPIRED:
+				return new IconTemplate(name, loreHeader, ChatColor.RED + "SCADUTO", null, false);
+			default:
+				throw new IllegalArgumentException("Unknown icon state " + key.state);
+		}
+	}
+	
+	
+	private static String getMultipliedUnit(String pluginID) {
+		switch (pluginID) {
+			case "sky_wars": 	return "punti";
+			default: 			return "coins";
+		}
+	}
+	
+	
+	private static String getUserFriendlyName(String pluginID) {
+		switch (pluginID) {
+			default: return WordUtils.capitalize(pluginID.replace("_", " "));
+		}
+	}
+	
+	
+	public static enum IconState {
+		
+		ACTIVE,
+		ACTIVATABLE,
+		NOT_ACTIVATABLE,
+		EXPIRED;
+		
+	}
+	
+	
+	@AllArgsConstructor
+	@Getter
+	public static class IconTemplate {
+		
+		private final String name;
+		private final List<String> loreHeader;
+		private final String activationLine; // Null per i booster attivi
+		private final PotionEffect potionEffect; // Null se la pozione non ha effetti
+		private final boolean glow;
+		
+	}
+	
+	
+	@AllArgsConstructor
+	@EqualsAndHashCode
+	private static class TemplateKey {
+		
+		private final String pluginID;
+		private final int multiplier;
+		private final long durationMillis;
+		private final IconState state;
+		
+	}
+
+}
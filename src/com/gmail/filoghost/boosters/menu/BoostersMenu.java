@@ -28,40 +28,116 @@
  */
 package com.gmail.filoghost.boosters.menu;
 
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 
-import org.apache.commons.lang3.text.WordUtils;
+import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.meta.PotionMeta;
 import org.bukkit.potion.PotionEffect;
-import org.bukkit.potion.PotionEffectType;
 
 import com.gmail.filoghost.boosters.BoostersPlugin;
 import com.gmail.filoghost.boosters.TimeUtils;
+import com.gmail.filoghost.boosters.api.BoostersAPI;
+import com.gmail.filoghost.boosters.menu.BoosterIconCache.IconState;
+import com.gmail.filoghost.boosters.menu.BoosterIconCache.IconTemplate;
+import com.gmail.filoghost.boosters.sql.BoosterFilter;
+import com.gmail.filoghost.boosters.sql.BoosterFilter.State;
 import com.gmail.filoghost.boosters.sql.BoosterImpl;
+import com.gmail.filoghost.boosters.sql.SQLManager;
+import com.gmail.filoghost.boosters.sql.SQLTask;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 
+import lombok.AllArgsConstructor;
+
+import wild.api.menu.Icon;
 import wild.api.menu.IconBuilder;
 import wild.api.menu.IconMenu;
 
 public class BoostersMenu extends IconMenu {
+	
+	/**
+	 * Booster mostrati in ogni pagina: 4 righe da 7, in modo che con la riga dei controlli si resti entro le 6 righe di una cassa.
+	 */
+	public static final int PAGE_SIZE = 28;
+	private static final int MAX_ROWS = 6;
+	
+	private final List<ActiveSlot> activeSlots = Lists.newArrayList();
 
-	public BoostersMenu(List<BoosterImpl> boosters) {
-		super("Lista Booster", divideRoundUp(boosters.size() + 1, 7) + 2); // +1 per lasciare sempre lo store nell'angolo spaziato, +2 per padding
+	/**
+	 * I booster attivi sono mostrati solo nella prima pagina e al massimo PAGE_SIZE, le pagine successive contengono solo quelli da attivare.
+	 * Essendoci al massimo un booster attivo per plugin ID, il limite si raggiunge solo con più di PAGE_SIZE modalità:
+	 * in quel caso quelli in eccesso non vengono mostrati e viene registrato un avviso.
+	 * 
+	 * @param boosters i booster della pagina, con almeno un booster da attivare in più se esiste la pagina successiva
+	 * @param page il numero della pagina, partendo da 0
+	 * @param pageCursors per ogni pagina dopo la prima, l'ID dell'ultimo booster da attivare della pagina precedente
+	 */
+	public BoostersMenu(List<BoosterImpl> boosters, int page, List<Integer> pageCursors) {
+		super("Lista Booster" + (page > 0 ? " (" + (page + 1) + ")" : ""), calculateRows(boosters, page));
 		
-		// Mostra prima quelli attivi, poi quelli da attivare
+		List<BoosterImpl> pendingBoosters = Lists.newArrayList();
+		
+		// Mostra prima quelli attivi (solo nella prima pagina), poi quelli da attivare
 		int index = 0;
+		int hiddenActive = 0;
 		for (BoosterImpl booster : boosters) {
 			if (booster.wasActivated()) {
-				displayBooster(index, booster);
-				index++;
+				if (index < PAGE_SIZE) {
+					displayBooster(index, booster);
+					index++;
+				} else {
+					hiddenActive++;
+				}
+			} else {
+				pendingBoosters.add(booster);
 			}
 		}
-		for (BoosterImpl booster : boosters) {
-			if (!booster.wasActivated()) {
-				displayBooster(index, booster);
-				index++;
+		
+		if (hiddenActive > 0) {
+			BoostersPlugin.instance.getLogger().warning("Player " + boosters.get(0).getPlayerName() + " has more than " + PAGE_SIZE + " active boosters, "
+					+ hiddenActive + " of them are not shown in the menu");
+		}
+		
+		pendingBoosters.sort(Comparator.comparingInt(BoosterImpl::getId));
+		int nextPageCursor = page > 0 ? pageCursors.get(page - 1) : 0;
+		int displayedPending = 0;
+		
+		for (BoosterImpl booster : pendingBoosters) {
+			if (index >= PAGE_SIZE) {
+				break;
 			}
+			displayBooster(index, booster);
+			nextPageCursor = booster.getId();
+			index++;
+			displayedPending++;
+		}
+		
+		if (page > 0) {
+			setIcon(4, getRows(), new IconBuilder(Material.ARROW)
+					.name(ChatColor.YELLOW + "Pagina precedente")
+					.lore(ChatColor.GRAY + "Torna alla pagina " + page + ".")
+					.clickHandler(clicker -> {
+						openPage(clicker, page - 1, pageCursors.subList(0, page - 1));
+					})
+					.build());
+		}
+		
+		if (pendingBoosters.size() > displayedPending) {
+			List<Integer> nextPageCursors = ImmutableList.<Integer>builder().addAll(pageCursors).add(nextPageCursor).build();
+			setIcon(6, getRows(), new IconBuilder(Material.ARROW)
+					.name(ChatColor.YELLOW + "Pagina successiva")
+					.lore(ChatColor.GRAY + "Vai alla pagina " + (page + 2) + ".")
+					.clickHandler(clicker -> {
+						openPage(clicker, page + 1, nextPageCursors);
+					})
+					.build());
 		}
 		
 		setIcon(9, getRows(), new IconBuilder(Material.WRITTEN_BOOK)
@@ -81,66 +157,163 @@ public class BoostersMenu extends IconMenu {
 		refresh();
 	}
 	
+	/**
+	 * Apre il menu e, se contiene booster attivi, ne aggiorna il tempo rimasto finché resta aperto.
+	 */
+	public void openAndTrack(Player player) {
+		open(player);
+		BoostersMenuTicker.track(player, this);
+	}
+	
+	/**
+	 * La prima pagina arriva dalla cache, le successive vengono caricate solo quando il giocatore ci arriva.
+	 */
+	private static void openPage(Player player, int page, List<Integer> pageCursors) {
+		if (page == 0) {
+			BoostersAPI.openBoostersMenu(player);
+			return;
+		}
+		
+		int afterID = pageCursors.get(page - 1);
+		SQLTask.submitAsync(() -> {
+			List<BoosterImpl> boosters = SQLManager.getBoosters(BoosterFilter.forPlayer(player.getName()).state(State.PENDING), afterID, PAGE_SIZE + 1);
+			
+			Bukkit.getScheduler().runTask(BoostersPlugin.instance, () -> {
+				if (player.isOnline()) {
+					new BoostersMenu(boosters, page, pageCursors).openAndTrack(player);
+				}
+			});
+		}, player);
+	}
+	
+	private static int calculateRows(List<BoosterImpl> boosters, int page) {
+		if (page > 0 || boosters.size() > PAGE_SIZE) {
+			// Più pagine: sempre la dimensione massima, per non far cambiare la posizione dei controlli
+			return MAX_ROWS;
+		}
+		return Math.min(divideRoundUp(boosters.size() + 1, 7) + 2, MAX_ROWS); // +1 per lasciare sempre lo store nell'angolo spaziato, +2 per padding
+	}
+	
 	private void displayBooster(int index, BoosterImpl booster) {
 		int positionX = (index % 7) + 2;
 		int positionY = (index / 7) + 2;
 		
-		IconBuilder iconBuilder = new IconBuilder(Material.POTION);
-		iconBuilder.name(ChatColor.BLUE + "Booster " + getUserFriendlyName(booster.getPluginID()));
-		
-		String activationLine;
-		PotionEffectType potionType;
+		IconState state;
+		String activationLine = null;
 		
 		if (booster.wasActivated()) {
-			potionType = PotionEffectType.JUMP;
-			iconBuilder.glow();
-			activationLine = ChatColor.GREEN + "ATTIVO" + ChatColor.GRAY + " (Tempo rimasto: " + TimeUtils.formatTimespan(booster.getActivatedAt() + booster.getDurationMillis() - System.currentTimeMillis()) + ")";
-			
+			state = IconState.ACTIVE;
+			activationLine = getActiveLine(booster, System.currentTimeMillis());
+			activeSlots.add(new ActiveSlot(booster, positionX, positionY, activationLine));
 		} else if (BoostersPlugin.instance.registeredPluginsIDs.contains(booster.getPluginID())) {
-			potionType = PotionEffectType.WATER_BREATHING;
-			activationLine = ChatColor.YELLOW + "CLICCA PER ATTIVARE";
-			iconBuilder.clickHandler(clicker -> {
-				new ConfirmActivationMenu(booster).open(clicker);
-			});
-			
+			state = IconState.ACTIVATABLE;
 		} else {
-			potionType = null;
-			activationLine = ChatColor.DARK_GRAY + "NON ATTIVABILE IN QUESTA MODALITA'";
+			state = IconState.NOT_ACTIVATABLE;
 		}
 		
-		iconBuilder.lore(
-			ChatColor.GRAY + "Moltiplicatore " + getMultipliedUnit(booster.getPluginID()) + ": " + ChatColor.GOLD + "x" + booster.getMultiplier(),
-			ChatColor.GRAY + "Durata: " + ChatColor.LIGHT_PURPLE + TimeUtils.formatTimespan(booster.getDurationMillis()),
-			"",
-			activationLine
-		);
+		setIcon(positionX, positionY, createIcon(booster, state, activationLine));
+	}
+	
+	/**
+	 * Aggiorna il tempo rimasto dei booster attivi, solo nelle icone in cui il testo è cambiato.
+	 * I booster scaduti passano allo stato di scaduto senza ricreare il menu.
+	 * Restituisce gli slot delle icone cambiate, da mostrare con {@link #refreshSlots(List)}.
+	 */
+	public List<Integer> updateCountdown(long now) {
+		List<Integer> changedSlots = Collections.emptyList();
 		
-		iconBuilder.metaModifier(meta -> {
-			if (potionType != null) {
-				PotionMeta potionMeta = (PotionMeta) meta;
-				potionMeta.setMainEffect(potionType);
-				potionMeta.addCustomEffect(new PotionEffect(potionType, 1, 1), true); // Altrimenti non si vede graficamente
+		for (Iterator<ActiveSlot> iter = activeSlots.iterator(); iter.hasNext();) {
+			ActiveSlot slot = iter.next();
+			
+			if (slot.booster.isExpired(now)) {
+				setIcon(slot.positionX, slot.positionY, createIcon(slot.booster, IconState.EXPIRED, null));
+				iter.remove();
+				changedSlots = addSlot(changedSlots, slot);
+				continue;
 			}
-		});
+			
+			String activationLine = getActiveLine(slot.booster, now);
+			if (!activationLine.equals(slot.renderedLine)) {
+				setIcon(slot.positionX, slot.positionY, createIcon(slot.booster, IconState.ACTIVE, activationLine));
+				slot.renderedLine = activationLine;
+				changedSlots = addSlot(changedSlots, slot);
+			}
+		}
 		
-		setIcon(positionX, positionY, iconBuilder.build());
+		return changedSlots;
 	}
 	
-	private String getMultipliedUnit(String pluginID) {
-		switch (pluginID) {
-			case "sky_wars": 	return "punti";
-			default: 			return "coins";
+	/**
+	 * Scrive nell'inventario aperto solo gli slot indicati, invece di tutte le icone come refresh().
+	 */
+	public void refreshSlots(List<Integer> slots) {
+		Inventory inventory = getInventory();
+		for (int slot : slots) {
+			inventory.setItem(slot, getIcon(slot % 9 + 1, slot / 9 + 1).createItemstack());
 		}
 	}
 	
-	private String getUserFriendlyName(String pluginID) {
-		switch (pluginID) {
-			default: return WordUtils.capitalize(pluginID.replace("_", " "));
+	private static List<Integer> addSlot(List<Integer> changedSlots, ActiveSlot slot) {
+		if (changedSlots.isEmpty()) {
+			// Nella maggior parte dei tick non cambia niente, la lista viene creata solo se serve
+			changedSlots = Lists.newArrayListWithCapacity(4);
 		}
+		changedSlots.add((slot.positionY - 1) * 9 + (slot.positionX - 1));
+		return changedSlots;
 	}
-
+	
+	public boolean hasActiveBoosters() {
+		return !activeSlots.isEmpty();
+	}
+	
+	private Icon createIcon(BoosterImpl booster, IconState state, String activeLine) {
+		IconTemplate template = BoosterIconCache.getTemplate(booster, state);
+		
+		IconBuilder iconBuilder = new IconBuilder(Material.POTION);
+		iconBuilder.name(template.getName());
+		
+		if (template.isGlow()) {
+			iconBuilder.glow();
+		}
+		if (state == IconState.ACTIVATABLE) {
+			iconBuilder.clickHandler(clicker -> {
+				new ConfirmActivationMenu(booster).open(clicker);
+			});
+		}
+		
+		List<String> loreHeader = template.getLoreHeader();
+		String[] lore = loreHeader.toArray(new String[loreHeader.size() + 1]);
+		lore[loreHeader.size()] = state == IconState.ACTIVE ? activeLine : template.getActivationLine();
+		iconBuilder.lore(lore);
+		
+		PotionEffect potionEffect = template.getPotionEffect();
+		if (potionEffect != null) {
+			iconBuilder.metaModifier(meta -> {
+				PotionMeta potionMeta = (PotionMeta) meta;
+				potionMeta.setMainEffect(potionEffect.getType());
+				potionMeta.addCustomEffect(potionEffect, true); // Altrimenti non si vede graficamente
+			});
+		}
+		
+		return iconBuilder.build();
+	}
+	
+	private static String getActiveLine(BoosterImpl booster, long now) {
+		return ChatColor.GREEN + "ATTIVO" + ChatColor.GRAY + " (Tempo rimasto: " + TimeUtils.formatTimespan(booster.getActivatedAt() + booster.getDurationMillis() - now) + ")";
+	}
+	
 	private static int divideRoundUp(int n, int divisor) {
 		return n % divisor == 0 ? (n / divisor) : ((n / divisor) + 1);
 	}
+	
+	
+	@AllArgsConstructor
+	private static class ActiveSlot {
+		
+		private final BoosterImpl booster;
+		private final int positionX, positionY;
+		private String renderedLine;
+		
+	}
 
 }
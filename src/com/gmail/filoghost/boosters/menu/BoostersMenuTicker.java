@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.menu;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.gmail.filoghost.boosters.BoostersPlugin;
+import com.google.common.collect.Maps;
+
+/**
+ * Aggiorna una volta al secondo il tempo rimasto nei menu dei booster aperti.
+ * Un solo task condiviso per tutti i menu, attivo solo finché almeno un menu con booster attivi è aperto.
+ * Da usare solo dal thread principale.
+ */
+public class BoostersMenuTicker {
+	
+	private static final long TICK_INTERVAL = 20L;
+	
+	private static final Map<Player, BoostersMenu> openMenus = Maps.newHashMap();
+	private static BukkitTask task;
+	
+	
+	public static void track(Player player, BoostersMenu menu) {
+		if (!menu.hasActiveBoosters()) {
+			openMenus.remove(player);
+			return;
+		}
+		
+		openMenus.put(player, menu);
+		if (task == null) {
+			task = Bukkit.getScheduler().runTaskTimer(BoostersPlugin.instance, BoostersMenuTicker::tick, TICK_INTERVAL, TICK_INTERVAL);
+		}
+	}
+	
+	
+	public static void untrack(Player player) {
+		if (openMenus.remove(player) != null && openMenus.isEmpty()) {
+			stop();
+		}
+	}
+	
+	
+	private static void tick() {
+		long now = System.currentTimeMillis();
+		
+		for (Iterator<Entry<Player, BoostersMenu>> iter = openMenus.entrySet().iterator(); iter.hasNext();) {
+			Entry<Player, BoostersMenu> entry = iter.next();
+			BoostersMenu menu = entry.getValue();
+			
+			if (!entry.getKey().isOnline()) {
+				iter.remove();
+				continue;
+			}
+			
+			List<Integer> changedSlots = menu.updateCountdown(now);
+			if (!changedSlots.isEmpty()) {
+				menu.refreshSlots(changedSlots);
+			}
+			
+			if (!menu.hasActiveBoosters()) {
+				// Tutti i booster sono scaduti, non c'è più niente da aggiornare
+				iter.remove();
+			}
+		}
+		
+		if (openMenus.isEmpty()) {
+			stop();
+		}
+	}
+	
+	
+	private static void stop() {
+		if (task != null) {
+			task.cancel();
+			task = null;
+		}
+	}
+
+}
@@ -31,6 +31,7 @@ package com.gmail.filoghost.boosters.menu;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
 
+import com.gmail.filoghost.boosters.sql.ActivationResult;
 import com.gmail.filoghost.boosters.sql.BoosterImpl;
 import com.gmail.filoghost.boosters.sql.SQLManager;
 import com.gmail.filoghost.boosters.sql.SQLTask;
@@ -46,10 +47,8 @@ public class ConfirmActivationMenu extends IconMenu {
 		setIcon(2, 2, new IconBuilder(Material.STAINED_GLASS_PANE).dataValue(5).name(ChatColor.GREEN + "Conferma attivazione").closeOnClick(true).clickHandler(clicker -> {
 			
 			SQLTask.submitAsync(() -> {
-				// Anche se per caso venisse attivato 2 volte, non succede niente (qualche ms di differenza sul timestamp dell'attivazione)
-				if (SQLManager.activateBooster(clicker, booster.getId())) {
-					clicker.sendMessage(ChatColor.GREEN + "Booster attivato con successo!");
-				}
+				ActivationResult result = SQLManager.activateBooster(clicker.getName(), booster);
+				clicker.sendMessage(getResultMessage(result));
 			}, clicker);
 			
 		}).build());
@@ -57,5 +56,17 @@ public class ConfirmActivationMenu extends IconMenu {
 		setIcon(8, 2, new IconBuilder(Material.STAINED_GLASS_PANE).dataValue(14).name(ChatColor.RED + "Annulla attivazione").closeOnClick(true).build());
 		refresh();
 	}
+	
+	private static String getResultMessage(ActivationResult result) {
+		switch (result) {
+			case SUCCESS:				return ChatColor.GREEN + "Booster attivato con successo!";
+			case NOT_FOUND:				return ChatColor.RED + "Errore: ID booster non trovato.";
+			case NOT_OWNER:				return ChatColor.RED + "Errore: questo booster non ti appartiene.";
+			case ALREADY_ACTIVATED:		return ChatColor.RED + "Errore: questo booster è già stato attivato.";
+			case PLUGIN_NOT_REGISTERED:	return ChatColor.RED + "Errore: non puoi attivare il booster in questa modalità.";
+			case OTHER_BOOSTER_ACTIVE:	return ChatColor.RED + "Errore: c'è già un booster attivo in questa modalità.";
+			default:					throw new IllegalArgumentException("Unknown activation result " + result);
+		}
+	}
 
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribuzione delle durate in intervalli fissi. Registrare un valore costa solo qualche incremento di LongAdder,
+ * quindi può restare attivo anche sui percorsi più frequenti. I percentili sono approssimati al limite superiore dell'intervallo.
+ */
+public class Histogram {
+	
+	private static final long[] BUCKET_BOUNDS_MICROS = {
+		100, 250, 500,
+		1_000, 2_500, 5_000,
+		10_000, 25_000, 50_000,
+		100_000, 250_000, 500_000,
+		1_000_000, 2_500_000, 5_000_000, 10_000_000
+	};
+	
+	// Un intervallo in più per i valori oltre l'ultimo limite
+	private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MICROS.length + 1];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sumMicros = new LongAdder();
+	
+	
+	protected Histogram() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+	
+	
+	public void record(long nanos) {
+		long micros = nanos / 1000;
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS_MICROS.length && micros > BUCKET_BOUNDS_MICROS[bucket]) {
+			bucket++;
+		}
+		
+		buckets[bucket].increment();
+		count.increment();
+		sumMicros.add(micros);
+	}
+	
+	
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+	
+	
+	public long getCount() {
+		return count.sum();
+	}
+	
+	public double getSumSeconds() {
+		return sumMicros.sum() / 1_000_000.0;
+	}
+	
+	public double getAverageMillis() {
+		long count = getCount();
+		return count > 0 ? sumMicros.sum() / (double) count / 1000.0 : 0.0;
+	}
+	
+	
+	public double getPercentileMillis(double percentile) {
+		long[] counts = getBucketCounts();
+		long total = 0;
+		for (long bucketCount : counts) {
+			total += bucketCount;
+		}
+		if (total == 0) {
+			return 0.0;
+		}
+		
+		long rank = (long) Math.ceil(total * percentile);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return getBucketBoundMicros(Math.min(i, BUCKET_BOUNDS_MICROS.length - 1)) / 1000.0;
+			}
+		}
+		return getBucketBoundMicros(BUCKET_BOUNDS_MICROS.length - 1) / 1000.0;
+	}
+	
+	
+	/**
+	 * Conteggi per intervallo (non cumulativi), l'ultimo è per i valori oltre l'ultimo limite.
+	 */
+	public long[] getBucketCounts() {
+		long[] counts = new long[buckets.length];
+		for (int i = 0; i < buckets.length; i++) {
+			counts[i] = buckets[i].sum();
+		}
+		return counts;
+	}
+	
+	
+	public static int getBucketBoundsCount() {
+		return BUCKET_BOUNDS_MICROS.length;
+	}
+	
+	public static long getBucketBoundMicros(int index) {
+		return BUCKET_BOUNDS_MICROS[index];
+	}
+
+}
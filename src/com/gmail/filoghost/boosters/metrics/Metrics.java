@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registro delle metriche del plugin: contatori, distribuzioni delle durate e valori letti al momento (gauge).
+ * Le metriche vanno create una volta sola (ad esempio in un campo statico) e poi aggiornate senza lock.
+ */
+public class Metrics {
+	
+	private static final String PROMETHEUS_PREFIX = "boosters_";
+	private static final String MBEAN_NAME = "com.gmail.filoghost.boosters:type=Metrics";
+	
+	// Ordinate per nome, per un output stabile
+	private static final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+	private static final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+	private static final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+	
+	
+	public static LongAdder counter(String name) {
+		return counters.computeIfAbsent(name, key -> new LongAdder());
+	}
+	
+	public static Histogram histogram(String name) {
+		return histograms.computeIfAbsent(name, key -> new Histogram());
+	}
+	
+	public static void gauge(String name, LongSupplier supplier) {
+		gauges.put(name, supplier);
+	}
+	
+	
+	public static Map<String, LongAdder> getCounters() {
+		return counters;
+	}
+	
+	public static Map<String, Histogram> getHistograms() {
+		return histograms;
+	}
+	
+	public static Map<String, LongSupplier> getGauges() {
+		return gauges;
+	}
+	
+	
+	public static void registerMBean() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(MBEAN_NAME);
+		if (server.isRegistered(name)) {
+			// Rimasto da un reload del plugin
+			server.unregisterMBean(name);
+		}
+		server.registerMBean(new MetricsBean(), name);
+	}
+	
+	
+	public static void unregisterMBean() {
+		try {
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	
+	/**
+	 * Scrive tutte le metriche nel formato testuale di Prometheus, sostituendo il file in modo atomico
+	 * (chi lo legge, ad esempio il textfile collector di node_exporter, non vede mai un file scritto a metà).
+	 */
+	public static void writePrometheusFile(File file) throws IOException {
+		File tempFile = new File(file.getPath() + ".tmp");
+		
+		try (Writer writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+			writePrometheus(writer);
+		}
+		
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	
+	public static void writePrometheus(Writer writer) throws IOException {
+		for (Entry<String, LongAdder> entry : counters.entrySet()) {
+			String name = PROMETHEUS_PREFIX + entry.getKey() + "_total";
+			writer.write("# TYPE " + name + " counter\n");
+			writer.write(name + " " + entry.getValue().sum() + "\n");
+		}
+		
+		for (Entry<String, LongSupplier> entry : gauges.entrySet()) {
+			String name = PROMETHEUS_PREFIX + entry.getKey();
+			writer.write("# TYPE " + name + " gauge\n");
+			writer.write(name + " " + entry.getValue().getAsLong() + "\n");
+		}
+		
+		for (Entry<String, Histogram> entry : histograms.entrySet()) {
+			String name = PROMETHEUS_PREFIX + entry.getKey() + "_seconds";
+			Histogram histogram = entry.getValue();
+			long[] bucketCounts = histogram.getBucketCounts();
+			
+			writer.write("# TYPE " + name + " histogram\n");
+			long cumulativeCount = 0;
+			for (int i = 0; i < Histogram.getBucketBoundsCount(); i++) {
+				cumulativeCount += bucketCounts[i];
+				writer.write(name + "_bucket{le=\"" + formatSeconds(Histogram.getBucketBoundMicros(i)) + "\"} " + cumulativeCount + "\n");
+			}
+			cumulativeCount += bucketCounts[bucketCounts.length - 1];
+			writer.write(name + "_bucket{le=\"+Inf\"} " + cumulativeCount + "\n");
+			writer.write(name + "_sum " + histogram.getSumSeconds() + "\n");
+			writer.write(name + "_count " + cumulativeCount + "\n");
+		}
+	}
+	
+	
+	private static String formatSeconds(long micros) {
+		return String.format(Locale.ROOT, "%.4f", micros / 1_000_000.0);
+	}
+
+}
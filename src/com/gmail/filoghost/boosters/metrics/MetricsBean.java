@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.metrics;
+
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Espone tramite JMX tutte le metriche del registro in sola lettura. Gli attributi vengono ricalcolati a ogni richiesta,
+ * così compaiono anche le metriche registrate dopo l'avvio.
+ */
+public class MetricsBean implements DynamicMBean {
+	
+	private static final String COUNT_SUFFIX = ".count";
+	private static final String AVERAGE_SUFFIX = ".averageMillis";
+	private static final String P99_SUFFIX = ".p99Millis";
+	
+	
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		LongAdder counter = Metrics.getCounters().get(attribute);
+		if (counter != null) {
+			return counter.sum();
+		}
+		
+		LongSupplier gauge = Metrics.getGauges().get(attribute);
+		if (gauge != null) {
+			return gauge.getAsLong();
+		}
+		
+		int separatorIndex = attribute.lastIndexOf('.');
+		if (separatorIndex > 0) {
+			Histogram histogram = Metrics.getHistograms().get(attribute.substring(0, separatorIndex));
+			if (histogram != null) {
+				switch (attribute.substring(separatorIndex)) {
+					case COUNT_SUFFIX:		return histogram.getCount();
+					case AVERAGE_SUFFIX:	return histogram.getAverageMillis();
+					case P99_SUFFIX:		return histogram.getPercentileMillis(0.99);
+					default:				break;
+				}
+			}
+		}
+		
+		throw new AttributeNotFoundException(attribute);
+	}
+	
+	
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		AttributeList list = new AttributeList();
+		for (String attribute : attributes) {
+			try {
+				list.add(new Attribute(attribute, getAttribute(attribute)));
+			} catch (AttributeNotFoundException e) {
+				// Gli attributi sconosciuti vengono omessi, come previsto da DynamicMBean
+			}
+		}
+		return list;
+	}
+	
+	
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Metrics are read-only");
+	}
+	
+	
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+	
+	
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+	
+	
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		List<MBeanAttributeInfo> attributes = Lists.newArrayList();
+		
+		for (String name : Metrics.getCounters().keySet()) {
+			attributes.add(new MBeanAttributeInfo(name, "long", "Counter", true, false, false));
+		}
+		for (String name : Metrics.getGauges().keySet()) {
+			attributes.add(new MBeanAttributeInfo(name, "long", "Gauge", true, false, false));
+		}
+		for (Entry<String, Histogram> entry : Metrics.getHistograms().entrySet()) {
+			attributes.add(new MBeanAttributeInfo(entry.getKey() + COUNT_SUFFIX, "long", "Number of recorded durations", true, false, false));
+			attributes.add(new MBeanAttributeInfo(entry.getKey() + AVERAGE_SUFFIX, "double", "Average duration in milliseconds", true, false, false));
+			attributes.add(new MBeanAttributeInfo(entry.getKey() + P99_SUFFIX, "double", "99th percentile in milliseconds (bucket upper bound)", true, false, false));
+		}
+		
+		return new MBeanInfo(getClass().getName(), "Boosters plugin metrics", attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+	}
+
+}
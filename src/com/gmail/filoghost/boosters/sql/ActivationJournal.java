@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.sql;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+import com.gmail.filoghost.boosters.BoostersPlugin;
+import com.gmail.filoghost.boosters.bus.BoosterEvent.Type;
+import com.gmail.filoghost.boosters.bus.BoosterEvents;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import lombok.AllArgsConstructor;
+
+/**
+ * Registro locale delle attivazioni fatte mentre il database non era raggiungibile.
+ * Le attivazioni vengono scritte su un file mappato in memoria a record di lunghezza fissa, rese subito visibili ai giocatori
+ * e riapplicate al database appena torna disponibile, controllando che nel frattempo non siano entrate in conflitto con altre.
+ */
+public class ActivationJournal {
+	
+	/*
+	 * Formato di un record:
+	 * stato (1) | ID (4) | attivazione (8) | durata (8) | moltiplicatore (4) | giocatore (1 + 32) | plugin ID (1 + 48) | ... | CRC32 (4)
+	 * Il CRC non comprende lo stato, che viene modificato sul posto durante la riapplicazione.
+	 */
+	private static final int RECORD_SIZE = 128;
+	private static final int MAX_PLAYER_NAME_BYTES = 32;
+	private static final int MAX_PLUGIN_ID_BYTES = 48;
+	private static final int CRC_OFFSET = RECORD_SIZE - 4;
+	
+	private static final byte STATE_EMPTY = 0;
+	private static final byte STATE_PENDING = 1;
+	private static final byte STATE_REPLAYED = 2;
+	private static final byte STATE_CONFLICT = 3;
+	
+	private static FileChannel channel;
+	private static MappedByteBuffer buffer;
+	private static int capacity;
+	private static int nextSlot;
+	
+	// In ordine di attivazione, protetta dal lock sulla classe
+	private static final Map<Integer, PendingActivation> pendingByBoosterID = Maps.newLinkedHashMap();
+	
+	// Scrittura su disco a gruppi: chi trova le proprie scritture già salvate da un altro thread non deve aspettare un nuovo force()
+	private static final Object flushLock = new Object();
+	private static long writeSequence; // Protetto dal lock sulla classe
+	private static long flushedSequence; // Protetto da flushLock
+	
+	
+	public static synchronized void open(File file, int capacity) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		
+		// Il file può essere stato creato con una capacità maggiore: i record oltre quella nuova non devono andare persi
+		int lastPendingSlot = findLastPendingSlot(channel);
+		if (lastPendingSlot >= capacity) {
+			BoostersPlugin.instance.getLogger().warning("The activation journal has pending records beyond the configured capacity of " + capacity + ", keeping " + (lastPendingSlot + 1) + " records until they are saved");
+			capacity = lastPendingSlot + 1;
+		} else if (channel.size() > (long) capacity * RECORD_SIZE) {
+			channel.truncate((long) capacity * RECORD_SIZE);
+		}
+		
+		ActivationJournal.capacity = capacity;
+		buffer = channel.map(MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE);
+		
+		List<PendingActivation> loaded = Lists.newArrayList();
+		for (int slot = 0; slot < capacity; slot++) {
+			if (buffer.get(slot * RECORD_SIZE) != STATE_PENDING) {
+				continue;
+			}
+			
+			BoosterImpl booster = readRecord(slot);
+			if (booster == null) {
+				// Scrittura interrotta a metà: l'attivazione non era mai stata confermata al giocatore
+				buffer.put(slot * RECORD_SIZE, STATE_EMPTY);
+				continue;
+			}
+			loaded.add(new PendingActivation(slot, booster));
+		}
+		
+		loaded.sort(Comparator.comparingLong(activation -> activation.booster.getActivatedAt()));
+		for (PendingActivation activation : loaded) {
+			pendingByBoosterID.put(activation.booster.getId(), activation);
+		}
+		
+		if (!loaded.isEmpty()) {
+			BoostersPlugin.instance.getLogger().info("Loaded " + loaded.size() + " activations not yet saved to the database");
+		}
+	}
+	
+	
+	public static synchronized boolean isOpen() {
+		return buffer != null;
+	}
+	
+	
+	public static synchronized void close() {
+		if (buffer == null) {
+			return;
+		}
+		
+		buffer.force();
+		buffer = null;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	
+	/**
+	 * Le attivazioni non ancora salvate sul database.
+	 */
+	public static synchronized List<BoosterImpl> getPendingActivations() {
+		List<BoosterImpl> boosters = Lists.newArrayListWithCapacity(pendingByBoosterID.size());
+		for (PendingActivation activation : pendingByBoosterID.values()) {
+			boosters.add(activation.booster);
+		}
+		return boosters;
+	}
+	
+	
+	/**
+	 * Sostituisce i booster letti dal database con la loro versione attivata, se sono ancora nel registro.
+	 */
+	public static synchronized List<BoosterImpl> applyPending(List<BoosterImpl> boosters) {
+		if (pendingByBoosterID.isEmpty()) {
+			return boosters;
+		}
+		
+		List<BoosterImpl> result = Lists.newArrayListWithCapacity(boosters.size());
+		for (BoosterImpl booster : boosters) {
+			PendingActivation activation = pendingByBoosterID.get(booster.getId());
+			result.add(activation != null ? activation.booster : booster);
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * Registra un'attivazione senza il database. Gli stessi controlli dell'attivazione normale vengono fatti sullo stato in memoria.
+	 * Restituisce null se non è stato possibile registrarla (registro pieno o errore di scrittura).
+	 */
+	protected static ActivationResult activateOffline(String playerName, BoosterImpl booster, long now) {
+		BoosterImpl activatedBooster = new BoosterImpl(booster.getPlayerName(), booster.getId(), booster.getPluginID(), booster.getMultiplier(), booster.getDurationMillis(), now);
+		long sequence;
+		
+		synchronized (ActivationJournal.class) {
+			if (buffer == null) {
+				return null;
+			}
+			if (!booster.getPlayerName().equalsIgnoreCase(playerName)) {
+				return ActivationResult.NOT_OWNER;
+			}
+			if (booster.wasActivated() || pendingByBoosterID.containsKey(booster.getId())) {
+				return ActivationResult.ALREADY_ACTIVATED;
+			}
+			
+			BoosterImpl activeBooster = BoostersPlugin.instance.activeBoosters.get(booster.getPluginID());
+			if (activeBooster != null && !activeBooster.isExpired(now)) {
+				return ActivationResult.OTHER_BOOSTER_ACTIVE;
+			}
+			
+			int slot = findFreeSlot();
+			if (slot < 0 || !writeRecord(slot, activatedBooster)) {
+				return null;
+			}
+			
+			pendingByBoosterID.put(booster.getId(), new PendingActivation(slot, activatedBooster));
+			sequence = ++writeSequence;
+			
+			// Subito dentro al lock, così due attivazioni concorrenti dello stesso plugin ID non possono riuscire entrambe
+			BoostersPlugin.instance.activeBoosters.put(activatedBooster);
+		}
+		
+		try {
+			flush(sequence);
+		} catch (Exception e) {
+			BoostersPlugin.instance.getLogger().log(Level.SEVERE, "Could not write the activation journal", e);
+			synchronized (ActivationJournal.class) {
+				PendingActivation activation = pendingByBoosterID.remove(booster.getId());
+				if (activation != null && buffer != null) {
+					buffer.put(activation.slot * RECORD_SIZE, STATE_EMPTY);
+				}
+			}
+			removeActive(activatedBooster);
+			return null;
+		}
+		
+		DBCache.update(activatedBooster);
+		BoosterEvents.publish(Type.ACTIVATED, activatedBooster);
+		return ActivationResult.SUCCESS;
+	}
+	
+	
+	/**
+	 * Riapplica al database le attivazioni registrate, in ordine. Si interrompe al primo errore, per riprovare più tardi.
+	 */
+	public static void replay() throws SQLException {
+		Collection<PendingActivation> pendingActivations;
+		synchronized (ActivationJournal.class) {
+			if (pendingByBoosterID.isEmpty()) {
+				return;
+			}
+			pendingActivations = Lists.newArrayList(pendingByBoosterID.values());
+		}
+		
+		for (PendingActivation activation : pendingActivations) {
+			BoosterImpl booster = activation.booster;
+			ActivationResult result = SQLManager.replayActivation(booster);
+			
+			synchronized (ActivationJournal.class) {
+				pendingByBoosterID.remove(booster.getId());
+				if (buffer != null) {
+					buffer.put(activation.slot * RECORD_SIZE, result == ActivationResult.SUCCESS ? STATE_REPLAYED : STATE_CONFLICT);
+					buffer.force();
+				}
+			}
+			
+			if (result == ActivationResult.SUCCESS) {
+				BoostersPlugin.instance.getLogger().info("Saved offline activation of booster #" + booster.getId() + " (" + booster.getPlayerName() + ", " + booster.getPluginID() + ")");
+				continue;
+			}
+			
+			// Nel frattempo il database è cambiato (ad esempio un altro server ha attivato un booster per lo stesso plugin ID)
+			BoostersPlugin.instance.getLogger().warning("Discarded offline activation of booster #" + booster.getId() + " (" + booster.getPlayerName() + ", " + booster.getPluginID() + "): " + result);
+			removeActive(booster);
+			DBCache.invalidate(booster.getPlayerName());
+			BoosterEvents.publish(Type.EXPIRED, booster);
+			
+			Bukkit.getScheduler().runTask(BoostersPlugin.instance, () -> {
+				Player player = Bukkit.getPlayerExact(booster.getPlayerName());
+				if (player != null) {
+					player.sendMessage(ChatColor.RED + "L'attivazione del tuo booster per " + booster.getPluginID() + " è stata annullata perché in conflitto con un altro booster.");
+				}
+			});
+		}
+	}
+	
+	
+	private static void flush(long sequence) {
+		synchronized (flushLock) {
+			if (flushedSequence >= sequence) {
+				return;
+			}
+			
+			long writtenSequence;
+			MappedByteBuffer buffer;
+			synchronized (ActivationJournal.class) {
+				writtenSequence = writeSequence;
+				buffer = ActivationJournal.buffer;
+			}
+			if (buffer == null) {
+				throw new IllegalStateException("Journal closed");
+			}
+			
+			buffer.force();
+			flushedSequence = writtenSequence;
+		}
+	}
+	
+	
+	private static void removeActive(BoosterImpl booster) {
+		BoostersPlugin.instance.activeBoosters.modify(activeBoostersByPluginID -> {
+			BoosterImpl currentBooster = activeBoostersByPluginID.get(booster.getPluginID());
+			if (currentBooster != null && currentBooster.getId() == booster.getId()) {
+				activeBoostersByPluginID.remove(booster.getPluginID());
+			}
+		});
+	}
+	
+	
+	/*
+	 * Legge solo il byte di stato di ogni record presente nel file, prima che venga mappato. Restituisce -1 se non ce ne sono.
+	 */
+	private static int findLastPendingSlot(FileChannel channel) throws IOException {
+		int existingRecords = (int) (channel.size() / RECORD_SIZE);
+		ByteBuffer state = ByteBuffer.allocate(1);
+		
+		for (int slot = existingRecords - 1; slot >= 0; slot--) {
+			state.clear();
+			if (channel.read(state, (long) slot * RECORD_SIZE) == 1 && state.get(0) == STATE_PENDING) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+	
+	
+	/*
+	 * Da chiamare con il lock sulla classe. I record già riapplicati o scartati vengono riutilizzati.
+	 */
+	private static int findFreeSlot() {
+		for (int i = 0; i < capacity; i++) {
+			int slot = (nextSlot + i) % capacity;
+			if (buffer.get(slot * RECORD_SIZE) != STATE_PENDING) {
+				nextSlot = (slot + 1) % capacity;
+				return slot;
+			}
+		}
+		
+		BoostersPlugin.instance.getLogger().severe("The activation journal is full (" + capacity + " activations)");
+		return -1;
+	}
+	
+	
+	private static boolean writeRecord(int slot, BoosterImpl booster) {
+		byte[] playerName = booster.getPlayerName().getBytes(StandardCharsets.UTF_8);
+		byte[] pluginID = booster.getPluginID().getBytes(StandardCharsets.UTF_8);
+		if (playerName.length > MAX_PLAYER_NAME_BYTES || pluginID.length > MAX_PLUGIN_ID_BYTES) {
+			return false;
+		}
+		
+		byte[] record = new byte[RECORD_SIZE];
+		ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+		recordBuffer.put(STATE_EMPTY);
+		recordBuffer.putInt(booster.getId());
+		recordBuffer.putLong(booster.getActivatedAt());
+		recordBuffer.putLong(booster.getDurationMillis());
+		recordBuffer.putInt(booster.getMultiplier());
+		recordBuffer.put((byte) playerName.length);
+		recordBuffer.put(playerName);
+		recordBuffer.position(recordBuffer.position() + MAX_PLAYER_NAME_BYTES - playerName.length);
+		recordBuffer.put((byte) pluginID.length);
+		recordBuffer.put(pluginID);
+		recordBuffer.putInt(CRC_OFFSET, checksum(record));
+		
+		int offset = slot * RECORD_SIZE;
+		for (int i = 1; i < RECORD_SIZE; i++) {
+			buffer.put(offset + i, record[i]);
+		}
+		// Lo stato per ultimo, dopo il contenuto
+		buffer.put(offset, STATE_PENDING);
+		return true;
+	}
+	
+	
+	private static BoosterImpl readRecord(int slot) {
+		byte[] record = new byte[RECORD_SIZE];
+		int offset = slot * RECORD_SIZE;
+		for (int i = 0; i < RECORD_SIZE; i++) {
+			record[i] = buffer.get(offset + i);
+		}
+		
+		ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+		if (recordBuffer.getInt(CRC_OFFSET) != checksum(record)) {
+			return null;
+		}
+		
+		recordBuffer.position(1);
+		int id = recordBuffer.getInt();
+		long activatedAt = recordBuffer.getLong();
+		long durationMillis = recordBuffer.getLong();
+		int multiplier = recordBuffer.getInt();
+		
+		byte[] playerName = new byte[recordBuffer.get()];
+		recordBuffer.get(playerName);
+		recordBuffer.position(recordBuffer.position() + MAX_PLAYER_NAME_BYTES - playerName.length);
+		byte[] pluginID = new byte[recordBuffer.get()];
+		recordBuffer.get(pluginID);
+		
+		return new BoosterImpl(new String(playerName, StandardCharsets.UTF_8), id, new String(pluginID, StandardCharsets.UTF_8), multiplier, durationMillis, activatedAt);
+	}
+	
+	
+	private static int checksum(byte[] record) {
+		CRC32 crc = new CRC32();
+		crc.update(record, 1, CRC_OFFSET - 1);
+		return (int) crc.getValue();
+	}
+	
+	
+	@AllArgsConstructor
+	private static class PendingActivation {
+		
+		private final int slot;
+		private final BoosterImpl booster;
+		
+	}
+
+}
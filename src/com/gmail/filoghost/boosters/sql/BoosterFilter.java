@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.sql;
+
+import java.util.List;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Criteri di ricerca dei booster non scaduti di un giocatore, usati dalle query paginate di {@link SQLManager}.
+ * I criteri non impostati non vengono applicati.
+ */
+@Getter
+public class BoosterFilter {
+	
+	private final String playerName;
+	private String pluginID;
+	private State state;
+	private Integer minMultiplier, maxMultiplier;
+	
+	
+	private BoosterFilter(String playerName) {
+		this.playerName = playerName;
+	}
+	
+	
+	public static BoosterFilter forPlayer(@NonNull String playerName) {
+		return new BoosterFilter(playerName);
+	}
+	
+	
+	public BoosterFilter pluginID(String pluginID) {
+		this.pluginID = pluginID;
+		return this;
+	}
+	
+	public BoosterFilter state(State state) {
+		this.state = state;
+		return this;
+	}
+	
+	public BoosterFilter multiplierRange(Integer minMultiplier, Integer maxMultiplier) {
+		this.minMultiplier = minMultiplier;
+		this.maxMultiplier = maxMultiplier;
+		return this;
+	}
+	
+	
+	/**
+	 * Identifica quali criteri sono impostati: filtri con la stessa forma producono lo stesso SQL, con parametri diversi.
+	 */
+	protected int getShape() {
+		int shape = state != null ? state.ordinal() + 1 : 0;
+		if (pluginID != null) {
+			shape |= 1 << 2;
+		}
+		if (minMultiplier != null) {
+			shape |= 1 << 3;
+		}
+		if (maxMultiplier != null) {
+			shape |= 1 << 4;
+		}
+		return shape;
+	}
+	
+	
+	/**
+	 * Le condizioni WHERE (senza la parola chiave), con i segnaposto nello stesso ordine di {@link #addParams(List, long)}.
+	 */
+	protected String buildConditions() {
+		StringBuilder sql = new StringBuilder();
+		sql.append(SQLColumns.PLAYER).append(" = ?");
+		
+		if (state == State.ACTIVE) {
+			sql.append(" AND ").append(SQLColumns.EXPIRES_AT).append(" > ?");
+		} else if (state == State.PENDING) {
+			sql.append(" AND ").append(SQLColumns.ACTIVATED_AT).append(" IS NULL");
+		} else {
+			sql.append(" AND (").append(SQLColumns.ACTIVATED_AT).append(" IS NULL OR ").append(SQLColumns.EXPIRES_AT).append(" > ?)");
+		}
+		
+		if (pluginID != null) {
+			sql.append(" AND ").append(SQLColumns.PLUGIN_ID).append(" = ?");
+		}
+		if (minMultiplier != null) {
+			sql.append(" AND ").append(SQLColumns.MULTIPLIER).append(" >= ?");
+		}
+		if (maxMultiplier != null) {
+			sql.append(" AND ").append(SQLColumns.MULTIPLIER).append(" <= ?");
+		}
+		return sql.toString();
+	}
+	
+	
+	protected void addParams(List<Object> params, long now) {
+		params.add(new MaskedValue(playerName));
+		
+		if (state != State.PENDING) {
+			params.add(now);
+		}
+		if (pluginID != null) {
+			params.add(pluginID);
+		}
+		if (minMultiplier != null) {
+			params.add(minMultiplier);
+		}
+		if (maxMultiplier != null) {
+			params.add(maxMultiplier);
+		}
+	}
+	
+	
+	public static enum State {
+		
+		ACTIVE,
+		PENDING;
+		
+	}
+
+}
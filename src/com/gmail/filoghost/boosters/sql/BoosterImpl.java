@@ -28,6 +28,7 @@
  */
 package com.gmail.filoghost.boosters.sql;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import com.gmail.filoghost.boosters.api.Booster;
@@ -35,7 +36,6 @@ import com.gmail.filoghost.boosters.api.Booster;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
-import wild.api.mysql.SQLResult;
 
 @AllArgsConstructor
 @Getter
@@ -48,8 +48,8 @@ public class BoosterImpl implements Booster {
 	private final long durationMillis;
 	@Setter private Long activatedAt;
 	
-	protected BoosterImpl(SQLResult result) throws SQLException {
-		this(result.getString(SQLColumns.PLAYER), result.getInt(SQLColumns.ID), result.getString(SQLColumns.PLUGIN_ID), result.getInt(SQLColumns.MULTIPLIER), result.getInt(SQLColumns.DURATION), getActivatedAtNullable(result));
+	protected BoosterImpl(ResultSet result) throws SQLException {
+		this(result.getString(SQLColumns.PLAYER), result.getInt(SQLColumns.ID), result.getString(SQLColumns.PLUGIN_ID), result.getInt(SQLColumns.MULTIPLIER), result.getLong(SQLColumns.DURATION), getActivatedAtNullable(result));
 	}
 	
 	public boolean isExpired(long now) {
@@ -64,7 +64,7 @@ public class BoosterImpl implements Booster {
 		return activatedAt != null;
 	}
 
-	private static Long getActivatedAtNullable(SQLResult result) throws SQLException {
+	private static Long getActivatedAtNullable(ResultSet result) throws SQLException {
 		long activatedAt = result.getLong(SQLColumns.ACTIVATED_AT);
 		return result.wasNull() ? null : activatedAt;
 	}
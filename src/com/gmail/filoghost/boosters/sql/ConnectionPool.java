@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.sql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Getter;
+
+/**
+ * Pool limitato di connessioni JDBC: più task asincroni possono leggere dal database in parallelo,
+ * e una connessione non più valida viene sostituita invece di bloccare tutte le richieste.
+ */
+public class ConnectionPool {
+
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+	private final String url, user, pass;
+	@Getter private final int minSize, maxSize;
+	private final long connectionTimeoutMillis, validationIntervalMillis, maxLifetimeMillis;
+
+	private final BlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+	private final Semaphore borrowPermits;
+	private final AtomicInteger totalConnections = new AtomicInteger();
+	private volatile boolean closed;
+
+
+	public ConnectionPool(String url, String user, String pass, int minSize, int maxSize, long connectionTimeoutMillis, long validationIntervalMillis, long maxLifetimeMillis) {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: min " + minSize + ", max " + maxSize);
+		}
+
+		this.url = url;
+		this.user = user;
+		this.pass = pass;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.connectionTimeoutMillis = connectionTimeoutMillis;
+		this.validationIntervalMillis = validationIntervalMillis;
+		this.maxLifetimeMillis = maxLifetimeMillis;
+		this.borrowPermits = new Semaphore(maxSize, true);
+	}
+
+
+	/**
+	 * Apre le connessioni minime, in modo da rilevare subito eventuali errori di configurazione.
+	 */
+	public void start() throws SQLException {
+		while (totalConnections.get() < minSize) {
+			idleConnections.offerLast(openConnection());
+		}
+	}
+
+
+	/**
+	 * Restituisce una connessione libera, da chiudere sempre dopo l'uso (anche tramite @Cleanup) per restituirla al pool.
+	 */
+	public PooledConnection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+
+		long waitStart = System.nanoTime();
+		try {
+			if (!borrowPermits.tryAcquire(connectionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new DatabaseUnavailableException("Timed out after " + connectionTimeoutMillis + "ms waiting for a database connection");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseUnavailableException("Interrupted while waiting for a database connection", e);
+		}
+
+		try {
+			PooledConnection connection;
+			while ((connection = idleConnections.pollFirst()) != null) {
+				if (isUsable(connection, System.currentTimeMillis())) {
+					connection.markBorrowed(System.nanoTime() - waitStart);
+					return connection;
+				}
+				discard(connection);
+			}
+
+			connection = openConnection();
+			connection.markBorrowed(System.nanoTime() - waitStart);
+			return connection;
+
+		} catch (SQLException | RuntimeException e) {
+			borrowPermits.release();
+			throw e;
+		}
+	}
+
+
+	protected void release(PooledConnection connection) {
+		try {
+			long now = System.currentTimeMillis();
+
+			if (closed || connection.isBroken() || now - connection.getCreatedAt() > maxLifetimeMillis) {
+				discard(connection);
+				if (!closed && totalConnections.get() < minSize) {
+					idleConnections.offerFirst(openConnection());
+				}
+			} else {
+				connection.setLastUsedAt(now);
+				// LIFO: le connessioni usate di recente restano calde, quelle in fondo scadono per inattività
+				idleConnections.offerFirst(connection);
+			}
+		} catch (SQLException e) {
+			// Non è riuscito a ricreare la connessione minima, ci riproverà alla prossima richiesta
+			e.printStackTrace();
+		} finally {
+			borrowPermits.release();
+		}
+	}
+
+
+	public void close() {
+		closed = true;
+		PooledConnection connection;
+		while ((connection = idleConnections.pollFirst()) != null) {
+			discard(connection);
+		}
+	}
+
+
+	public int getActiveConnections() {
+		return maxSize - borrowPermits.availablePermits();
+	}
+
+
+	public int getIdleConnections() {
+		return idleConnections.size();
+	}
+
+
+	private boolean isUsable(PooledConnection connection, long now) {
+		if (now - connection.getCreatedAt() > maxLifetimeMillis) {
+			return false;
+		}
+
+		if (now - connection.getLastUsedAt() > validationIntervalMillis) {
+			try {
+				return connection.getConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	private PooledConnection openConnection() throws SQLException {
+		Connection connection = DriverManager.getConnection(url, user, pass);
+		totalConnections.incrementAndGet();
+		return new PooledConnection(this, connection, System.currentTimeMillis());
+	}
+
+
+	private void discard(PooledConnection connection) {
+		totalConnections.decrementAndGet();
+		try {
+			connection.getConnection().close();
+		} catch (SQLException e) {
+			// Probabilmente era già chiusa dal server
+		}
+	}
+
+}
@@ -28,100 +28,492 @@
  */
 package com.gmail.filoghost.boosters.sql;
 
+import java.sql.SQLException;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitTask;
 
 import com.gmail.filoghost.boosters.BoostersPlugin;
+import com.gmail.filoghost.boosters.menu.BoostersMenu;
+import com.gmail.filoghost.boosters.metrics.Histogram;
+import com.gmail.filoghost.boosters.metrics.Metrics;
+import com.gmail.filoghost.boosters.sql.SQLExecutor.Priority;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import lombok.AllArgsConstructor;
-import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 
+/**
+ * Cache dei booster di ogni giocatore online, per non interrogare il database ogni volta che si apre il menu.
+ * Le richieste che arrivano durante un caricamento attendono lo stesso caricamento, e quando la cache sta per scadere
+ * viene restituita quella vecchia mentre si aggiorna in background.
+ */
 public class DBCache {
 	
-	private static final long CACHE_MAX_TIME = TimeUnit.SECONDS.toMillis(30);
+	// Si mette in cache solo la prima pagina del menu, +1 per sapere se esiste una pagina successiva
+	private static final int FIRST_PAGE_PENDING_LIMIT = BoostersMenu.PAGE_SIZE + 1;
+	
+	private static long ttlMillis = TimeUnit.SECONDS.toMillis(30);
+	private static long refreshAheadMillis = TimeUnit.SECONDS.toMillis(20);
+	private static int maxSize = 1000;
+	private static int preloadWindowTicks = 20;
+	private static int preloadBatchSize = 100;
+	
+	private static final Map<UUID, CacheEntry> entriesByUUID = Maps.newConcurrentMap();
 	
-	private static Set<Player> loadingPlayers = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Player, Boolean>()));
-	private static Map<Player, BoostersCache> boostersByPlayer = Collections.synchronizedMap(new WeakHashMap<>());
+	// Indici inversi, per non dover scorrere tutti i giocatori in cache
+	private static final Map<String, CacheEntry> entriesByName = Maps.newConcurrentMap();
+	private static final Map<Integer, CacheEntry> entriesByBoosterID = Maps.newConcurrentMap();
+	
+	private static final LongAdder
+		HITS = Metrics.counter("cache_hits"),
+		STALE_HITS = Metrics.counter("cache_stale_hits"),
+		MISSES = Metrics.counter("cache_misses"),
+		COALESCED_LOADS = Metrics.counter("cache_coalesced_loads"),
+		LOAD_ERRORS = Metrics.counter("cache_load_errors"),
+		PRELOADED_PLAYERS = Metrics.counter("cache_preloaded_players"),
+		DROPPED_PRELOADS = Metrics.counter("cache_dropped_preloads"),
+		INVALIDATIONS = Metrics.counter("cache_invalidations"),
+		EVICTIONS = Metrics.counter("cache_evictions");
+	private static final Histogram LOAD_LATENCY = Metrics.histogram("cache_load");
+	
+	static {
+		Metrics.gauge("cache_size", entriesByUUID::size);
+	}
+	
+	// Giocatori entrati da poco, caricati tutti insieme alla fine della finestra
+	private static final Queue<CacheEntry> pendingPreloads = new ConcurrentLinkedQueue<>();
+	private static final AtomicBoolean preloadScheduled = new AtomicBoolean();
+	
+	private static PageLoader pageLoader = SQLManager::getFirstBoostersPage;
+	
+	
+	public static void configure(long ttlMillis, long refreshAheadMillis, int maxSize) {
+		configure(ttlMillis, refreshAheadMillis, maxSize, SQLManager::getFirstBoostersPage);
+	}
 	
 	
-	public static void getNonExpiredBoosters(Player player, Runnable runIfLongLoading, Callback<List<BoosterImpl>> successCallback, Callback<Exception> errorCallback) {
-		if (loadingPlayers.contains(player)) {
-			// Sta già eseguendo il task: è per evitare spam di richieste al database
+	/**
+	 * Solo per i benchmark, che misurano la cache senza un database: le pagine vengono lette da pageLoader invece che con una query.
+	 */
+	static void configure(long ttlMillis, long refreshAheadMillis, int maxSize, PageLoader pageLoader) {
+		DBCache.ttlMillis = ttlMillis;
+		DBCache.refreshAheadMillis = Math.min(refreshAheadMillis, ttlMillis);
+		DBCache.maxSize = maxSize;
+		DBCache.pageLoader = pageLoader;
+	}
+	
+	
+	public static void configurePreload(int windowTicks, int batchSize) {
+		DBCache.preloadWindowTicks = windowTicks;
+		DBCache.preloadBatchSize = batchSize;
+	}
+	
+	
+	public static void onJoin(Player player) {
+		CacheEntry entry = getOrCreateEntry(player);
+		if (preloadWindowTicks <= 0) {
 			return;
 		}
-
-		BoostersCache cache = boostersByPlayer.get(player);
+		
+		pendingPreloads.add(entry);
+		if (preloadScheduled.compareAndSet(false, true)) {
+			Bukkit.getScheduler().runTaskLater(BoostersPlugin.instance, DBCache::flushPreloads, preloadWindowTicks);
+		}
+	}
+	
+	
+	public static void onQuit(Player player) {
+		CacheEntry entry = entriesByUUID.remove(player.getUniqueId());
+		if (entry != null) {
+			removeFromIndexes(entry);
+		}
+	}
+	
+	
+	/**
+	 * I booster attivi del giocatore e i primi da attivare, cioè quelli necessari per la prima pagina del menu.
+	 */
+	public static void getFirstBoostersPage(Player player, Runnable runIfLongLoading, Callback<List<BoosterImpl>> successCallback, Callback<Exception> errorCallback) {
+		CacheEntry entry = getOrCreateEntry(player);
 		long now = System.currentTimeMillis();
 		
-		if (cache == null || now - cache.updatedAtTime > CACHE_MAX_TIME) {
-			
-			loadingPlayers.add(player);
-			BukkitTask runIfLongLoadingTask = Bukkit.getScheduler().runTaskLaterAsynchronously(BoostersPlugin.instance, runIfLongLoading, 5); // 5 ticks = 250 ms
+		List<BoosterImpl> cachedBoosters = null;
+		boolean startLoading = false;
+		
+		synchronized (entry) {
+			entry.lastAccess = now;
 			
-			Bukkit.getScheduler().runTaskAsynchronously(BoostersPlugin.instance, () -> {
-				try {
-					List<BoosterImpl> boostersList = SQLManager.getNonExpiredBoosters(player.getName());
-					runIfLongLoadingTask.cancel(); // Cancella il task a questo punto (se non è ancora stato eseguito)
-					boostersByPlayer.put(player, new BoostersCache(boostersList, now));
-					
-					Bukkit.getScheduler().runTask(BoostersPlugin.instance, () -> {
-						successCallback.onCall(boostersList);
-					});
-				} catch (Exception e) {
-					Bukkit.getScheduler().runTask(BoostersPlugin.instance, () -> {
-						errorCallback.onCall(e);
-					});
-				} finally {
-					loadingPlayers.remove(player);
-				}
-			});
-		} else {
-			for (Iterator<BoosterImpl> iter = cache.boosters.iterator(); iter.hasNext();) {
-				BoosterImpl booster = iter.next();
-				if (booster.wasActivated() && booster.isExpired(now)) {
-					iter.remove();
+			if (entry.boosters != null && now - entry.loadedAt < ttlMillis) {
+				cachedBoosters = entry.boosters;
+				if (now - entry.loadedAt >= refreshAheadMillis && !entry.loading) {
+					// Quasi scaduta: si usa quella attuale e intanto si ricarica
+					entry.loading = true;
+					startLoading = true;
+					STALE_HITS.increment();
+				} else {
+					HITS.increment();
 				}
 				
+			} else {
+				BukkitTask runIfLongLoadingTask = Bukkit.getScheduler().runTaskLater(BoostersPlugin.instance, runIfLongLoading, 5); // 5 ticks = 250 ms
+				entry.waitingRequests.add(new WaitingRequest(successCallback, errorCallback, runIfLongLoadingTask));
+				if (!entry.loading) {
+					entry.loading = true;
+					startLoading = true;
+					MISSES.increment();
+				} else {
+					// Un caricamento è già in corso, si aspetta quello invece di farne un altro
+					COALESCED_LOADS.increment();
+				}
 			}
-			successCallback.onCall(cache.boosters);
+		}
+		
+		if (startLoading) {
+			load(entry);
+		}
+		if (cachedBoosters != null) {
+			successCallback.onCall(removeExpired(cachedBoosters, now));
 		}
 	}
 	
+	
 	/*
 	 * Cancella la cache del database per un giocatore.
 	 * Si usa quando un booster viene creato o attivato, per fare in modo che il giocatore veda una lista aggiornata.
 	 * Questo non succede troppo frequentemente, quindi non è un problema di performance eliminare la cache in quei casi.
 	 */
 	public static void invalidate(String playerName) {
-		boostersByPlayer.entrySet().removeIf(entry -> entry.getKey().getName().equalsIgnoreCase(playerName));
+		CacheEntry entry = entriesByName.get(normalizeName(playerName));
+		if (entry == null) {
+			return;
+		}
+		
+		INVALIDATIONS.increment();
+		synchronized (entry) {
+			entry.generation++;
+			setBoosters(entry, null);
+		}
 	}
 	
+	
+	/**
+	 * Sostituisce il booster nella prima pagina in cache del giocatore. Un booster appena attivato che non era in cache
+	 * (ad esempio attivato da una pagina successiva) viene aggiunto, perché la prima pagina contiene tutti quelli attivi.
+	 */
 	public static void update(BoosterImpl updatedBooster) {
-		for (BoostersCache cache : boostersByPlayer.values()) {
-			for (BoosterImpl booster : cache.boosters) {
-				if (booster.getId() == updatedBooster.getId()) {
-					// Questo è l'unico campo non final, che può cambiare
-					booster.setActivatedAt(updatedBooster.getActivatedAt());
+		CacheEntry entry = entriesByBoosterID.get(updatedBooster.getId());
+		if (entry == null) {
+			if (!updatedBooster.wasActivated()) {
+				return;
+			}
+			entry = entriesByName.get(normalizeName(updatedBooster.getPlayerName()));
+			if (entry == null) {
+				return;
+			}
+		}
+		
+		synchronized (entry) {
+			if (entry.boosters == null) {
+				return;
+			}
+			
+			// Le liste in cache sono immutabili: si sostituisce la lista intera
+			List<BoosterImpl> updatedList = Lists.newArrayList(entry.boosters);
+			boolean replaced = false;
+			for (int i = 0; i < updatedList.size(); i++) {
+				if (updatedList.get(i).getId() == updatedBooster.getId()) {
+					updatedList.set(i, updatedBooster);
+					replaced = true;
+					break;
+				}
+			}
+			
+			if (!replaced) {
+				if (!updatedBooster.wasActivated()) {
+					return;
 				}
+				updatedList.add(updatedBooster);
+			}
+			setBoosters(entry, Collections.unmodifiableList(updatedList));
+		}
+	}
+	
+	
+	private static CacheEntry getOrCreateEntry(Player player) {
+		CacheEntry entry = entriesByUUID.get(player.getUniqueId());
+		if (entry != null) {
+			return entry;
+		}
+		
+		entry = entriesByUUID.computeIfAbsent(player.getUniqueId(), uuid -> new CacheEntry(uuid, player.getName()));
+		entriesByName.put(normalizeName(entry.playerName), entry);
+		if (entriesByUUID.size() > maxSize) {
+			evictLeastRecentlyUsed(entry);
+		}
+		return entry;
+	}
+	
+	
+	private static void evictLeastRecentlyUsed(CacheEntry keep) {
+		UUID eldestUUID = null;
+		long eldestAccess = Long.MAX_VALUE;
+		
+		for (Map.Entry<UUID, CacheEntry> mapEntry : entriesByUUID.entrySet()) {
+			CacheEntry entry = mapEntry.getValue();
+			if (entry != keep && entry.lastAccess < eldestAccess) {
+				eldestUUID = mapEntry.getKey();
+				eldestAccess = entry.lastAccess;
+			}
+		}
+		
+		if (eldestUUID != null) {
+			CacheEntry removedEntry = entriesByUUID.remove(eldestUUID);
+			if (removedEntry != null) {
+				EVICTIONS.increment();
+				removeFromIndexes(removedEntry);
 			}
 		}
 	}
 	
 	
+	/*
+	 * Carica i booster dei giocatori entrati durante la finestra, con una query per ogni gruppo,
+	 * così il menu è già in cache quando viene aperto la prima volta.
+	 */
+	private static void flushPreloads() {
+		preloadScheduled.set(false);
+		
+		List<CacheEntry> batch = Lists.newArrayList();
+		List<Long> batchGenerations = Lists.newArrayList();
+		CacheEntry entry;
+		
+		while ((entry = pendingPreloads.poll()) != null) {
+			synchronized (entry) {
+				if (entry.loading || entry.boosters != null || entriesByUUID.get(entry.uuid) != entry) {
+					// Già in caricamento, già caricato o giocatore già uscito
+					continue;
+				}
+				entry.loading = true;
+				batch.add(entry);
+				batchGenerations.add(entry.generation);
+			}
+			
+			if (batch.size() >= preloadBatchSize) {
+				preloadBatch(batch, batchGenerations);
+				batch = Lists.newArrayList();
+				batchGenerations = Lists.newArrayList();
+			}
+		}
+		
+		if (!batch.isEmpty()) {
+			preloadBatch(batch, batchGenerations);
+		}
+	}
+	
+	
+	private static void preloadBatch(List<CacheEntry> batch, List<Long> generations) {
+		long startTime = System.currentTimeMillis();
+		
+		boolean accepted = SQLExecutor.submit(() -> {
+			try {
+				List<String> playerNames = Lists.newArrayListWithCapacity(batch.size());
+				for (CacheEntry entry : batch) {
+					playerNames.add(entry.playerName);
+				}
+				
+				Map<String, List<BoosterImpl>> boostersByPlayer = SQLManager.getFirstBoostersPages(playerNames, FIRST_PAGE_PENDING_LIMIT);
+				PRELOADED_PLAYERS.add(batch.size());
+				for (int i = 0; i < batch.size(); i++) {
+					CacheEntry entry = batch.get(i);
+					List<BoosterImpl> boosters = boostersByPlayer.getOrDefault(normalizeName(entry.playerName), Collections.emptyList());
+					complete(entry, generations.get(i), startTime, ActivationJournal.applyPending(boosters), null);
+				}
+			} catch (Exception e) {
+				for (int i = 0; i < batch.size(); i++) {
+					complete(batch.get(i), generations.get(i), startTime, null, e);
+				}
+			}
+		}, Priority.LOW); // Il precaricamento non è essenziale, viene scartato se il database è sovraccarico
+		
+		if (!accepted) {
+			DROPPED_PRELOADS.add(batch.size());
+			for (CacheEntry entry : batch) {
+				boolean hasWaitingRequests;
+				synchronized (entry) {
+					hasWaitingRequests = !entry.waitingRequests.isEmpty();
+					if (!hasWaitingRequests) {
+						entry.loading = false;
+					}
+				}
+				if (hasWaitingRequests) {
+					// Qualcuno ha aperto il menu nel frattempo: si prova con un caricamento normale
+					load(entry);
+				}
+			}
+		}
+	}
+	
+	
+	private static void load(CacheEntry entry) {
+		long generation;
+		synchronized (entry) {
+			generation = entry.generation;
+		}
+		long startTime = System.currentTimeMillis();
+		
+		boolean accepted = SQLExecutor.submit(() -> {
+			try {
+				complete(entry, generation, startTime, ActivationJournal.applyPending(pageLoader.load(entry.playerName, FIRST_PAGE_PENDING_LIMIT)), null);
+			} catch (Exception e) {
+				complete(entry, generation, startTime, null, e);
+			}
+		}, Priority.NORMAL);
+		
+		if (!accepted) {
+			complete(entry, generation, startTime, null, new RejectedExecutionException("Database executor saturated"));
+		}
+	}
+	
+	
+	private static void complete(CacheEntry entry, long generation, long startTime, List<BoosterImpl> boosters, Exception error) {
+		List<WaitingRequest> waitingRequests;
+		LOAD_LATENCY.record(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - startTime));
+		if (error != null) {
+			LOAD_ERRORS.increment();
+		}
+		
+		synchronized (entry) {
+			if (error == null && generation != entry.generation) {
+				// Invalidata durante il caricamento: il risultato potrebbe non contenere l'ultima modifica, si ricarica
+				load(entry);
+				return;
+			}
+			
+			entry.loading = false;
+			if (error == null && entriesByUUID.get(entry.uuid) == entry) {
+				// Se il giocatore è uscito nel frattempo non si salva niente, ma si risponde comunque a chi è in attesa
+				setBoosters(entry, ImmutableList.copyOf(boosters));
+				entry.loadedAt = startTime;
+			}
+			
+			waitingRequests = entry.waitingRequests;
+			entry.waitingRequests = Lists.newArrayList();
+		}
+		
+		if (waitingRequests.isEmpty()) {
+			return;
+		}
+		
+		Runnable notifyWaiting = () -> {
+			for (WaitingRequest request : waitingRequests) {
+				request.runIfLongLoadingTask.cancel(); // Cancella il task a questo punto (se non è ancora stato eseguito)
+				if (error == null) {
+					request.successCallback.onCall(removeExpired(boosters, System.currentTimeMillis()));
+				} else {
+					request.errorCallback.onCall(error);
+				}
+			}
+		};
+		
+		if (Bukkit.isPrimaryThread()) {
+			notifyWaiting.run();
+		} else {
+			Bukkit.getScheduler().runTask(BoostersPlugin.instance, notifyWaiting);
+		}
+	}
+	
+	
+	/*
+	 * Da chiamare con il lock sull'entry, mantiene aggiornato l'indice per ID dei booster.
+	 */
+	private static void setBoosters(CacheEntry entry, List<BoosterImpl> boosters) {
+		if (entry.boosters != null) {
+			for (BoosterImpl booster : entry.boosters) {
+				entriesByBoosterID.remove(booster.getId(), entry);
+			}
+		}
+		
+		entry.boosters = boosters;
+		
+		if (boosters != null) {
+			for (BoosterImpl booster : boosters) {
+				entriesByBoosterID.put(booster.getId(), entry);
+			}
+		}
+	}
+	
+	
+	private static void removeFromIndexes(CacheEntry entry) {
+		entriesByName.remove(normalizeName(entry.playerName), entry);
+		synchronized (entry) {
+			setBoosters(entry, null);
+		}
+	}
+	
+	
+	private static String normalizeName(String playerName) {
+		return playerName.toLowerCase(Locale.ROOT);
+	}
+	
+	
+	private static List<BoosterImpl> removeExpired(List<BoosterImpl> boosters, long now) {
+		List<BoosterImpl> nonExpired = null;
+		
+		for (int i = 0; i < boosters.size(); i++) {
+			BoosterImpl booster = boosters.get(i);
+			boolean expired = booster.wasActivated() && booster.isExpired(now);
+			
+			if (expired && nonExpired == null) {
+				// Copia solo se serve, la lista in cache non viene mai modificata
+				nonExpired = Lists.newArrayList(boosters.subList(0, i));
+			} else if (!expired && nonExpired != null) {
+				nonExpired.add(booster);
+			}
+		}
+		
+		return nonExpired != null ? nonExpired : boosters;
+	}
+	
+	
+	@RequiredArgsConstructor
+	private static class CacheEntry {
+		
+		private final UUID uuid;
+		private final String playerName;
+		
+		// Protetti dal lock sull'oggetto
+		private List<BoosterImpl> boosters;
+		private long loadedAt;
+		private long generation;
+		private boolean loading;
+		private List<WaitingRequest> waitingRequests = Lists.newArrayList();
+		
+		private volatile long lastAccess = System.currentTimeMillis();
+		
+	}
+	
+	
 	@AllArgsConstructor
-	public static class BoostersCache {
+	private static class WaitingRequest {
 		
-		@NonNull private final List<BoosterImpl> boosters;
-		private final long updatedAtTime;
+		private final Callback<List<BoosterImpl>> successCallback;
+		private final Callback<Exception> errorCallback;
+		private final BukkitTask runIfLongLoadingTask;
 		
 	}
 	
@@ -132,4 +524,11 @@ public class DBCache {
 		
 	}
 	
+	
+	static interface PageLoader {
+		
+		List<BoosterImpl> load(String playerName, int pendingLimit) throws SQLException;
+		
+	}
+	
 }
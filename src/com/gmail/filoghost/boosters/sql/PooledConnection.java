@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.sql;
+
+import java.sql.Connection;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Connessione presa in prestito da {@link ConnectionPool}: chiuderla la restituisce al pool.
+ */
+@Getter
+public class PooledConnection implements AutoCloseable {
+
+	@Getter(AccessLevel.NONE) private final ConnectionPool pool;
+	private final Connection connection;
+	private final long createdAt;
+	@Setter(AccessLevel.PROTECTED) private long lastUsedAt;
+
+	/**
+	 * Se impostato, la connessione viene chiusa invece di essere restituita al pool.
+	 */
+	@Setter private boolean broken;
+	
+	@Getter(AccessLevel.NONE) private boolean borrowed;
+	@Getter(AccessLevel.NONE) private long borrowWaitNanos;
+
+
+	protected PooledConnection(ConnectionPool pool, Connection connection, long createdAt) {
+		this.pool = pool;
+		this.connection = connection;
+		this.createdAt = createdAt;
+		this.lastUsedAt = createdAt;
+	}
+
+
+	protected void markBorrowed(long waitNanos) {
+		borrowed = true;
+		borrowWaitNanos = waitNanos;
+	}
+
+
+	/**
+	 * Tempo atteso per ottenere la connessione dal pool, attribuito solo alla prima query eseguita dopo il prestito.
+	 */
+	protected long takeBorrowWaitNanos() {
+		long waitNanos = borrowWaitNanos;
+		borrowWaitNanos = 0;
+		return waitNanos;
+	}
+
+
+	@Override
+	public void close() {
+		// Evita di restituire due volte la stessa connessione al pool
+		if (borrowed) {
+			borrowed = false;
+			pool.release(this);
+		}
+	}
+
+}
@@ -33,13 +33,21 @@ public class SQLColumns {
 	public static final String
 		
 		TABLE = 		"boosters",
+		META_TABLE =	"boosters_meta",
+		HISTORY_TABLE =	"boosters_history",
 	
 		ID =			"id",
 		PLAYER = 		"player",
 		DURATION = 		"duration",
 		PLUGIN_ID = 	"plugin_id",
 		MULTIPLIER = 	"multiplier",
-		ACTIVATED_AT = 	"activated_at";
+		ACTIVATED_AT = 	"activated_at",
+		EXPIRES_AT =	"expires_at",
+		UPDATED_AT =	"updated_at",
+		ARCHIVED_AT =	"archived_at",
+		
+		META_KEY =		"meta_key",
+		META_VALUE =	"meta_value";
 	
 	
 }
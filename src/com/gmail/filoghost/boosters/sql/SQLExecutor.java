@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.sql;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+import com.gmail.filoghost.boosters.BoostersPlugin;
+import com.gmail.filoghost.boosters.metrics.Metrics;
+
+/**
+ * Executor dedicato alle operazioni sul database, separato dai thread asincroni di Bukkit:
+ * se MySQL è lento i task si accodano qui (fino a un limite) invece di occupare i worker condivisi con gli altri plugin.
+ */
+public class SQLExecutor {
+
+	private static final long SATURATION_WARNING_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+	private static ThreadPoolExecutor executor;
+	private static int queueCapacity;
+
+	private static final LongAdder submittedTasks = new LongAdder();
+	private static final LongAdder rejectedTasks = Metrics.counter("sql_executor_rejected_tasks");
+	private static final LongAdder completedTasks = new LongAdder();
+	private static final LongAdder totalWaitNanos = new LongAdder();
+	private static final AtomicLong maxWaitNanos = new AtomicLong();
+	private static final AtomicLong lastSaturationWarning = new AtomicLong();
+
+
+	public static void start(int threads, int queueSize, boolean virtualThreads) {
+		queueCapacity = queueSize;
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), createThreadFactory(virtualThreads), new ThreadPoolExecutor.AbortPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		
+		Metrics.gauge("sql_executor_queue_depth", SQLExecutor::getQueueDepth);
+		Metrics.gauge("sql_executor_active_threads", SQLExecutor::getActiveThreads);
+	}
+
+
+	public static void shutdown() {
+		if (executor == null) {
+			return;
+		}
+
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+				BoostersPlugin.instance.getLogger().warning("Some database tasks did not complete before shutdown (" + executor.getQueue().size() + " still queued)");
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * Esegue un task sul thread del database. Restituisce false se il task è stato rifiutato perché la coda è piena
+	 * (oppure, per i task a bassa priorità, già piena per metà).
+	 */
+	public static boolean submit(Runnable task, Priority priority) {
+		if (executor == null || executor.isShutdown()) {
+			return false;
+		}
+
+		if (priority == Priority.LOW && executor.getQueue().size() >= queueCapacity / 2) {
+			onRejected();
+			return false;
+		}
+
+		long submittedAt = System.nanoTime();
+		try {
+			executor.execute(() -> {
+				recordWait(System.nanoTime() - submittedAt);
+				try {
+					task.run();
+				} finally {
+					completedTasks.increment();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			onRejected();
+			return false;
+		}
+
+		submittedTasks.increment();
+		return true;
+	}
+
+
+	public static int getQueueDepth() {
+		return executor != null ? executor.getQueue().size() : 0;
+	}
+
+	public static int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public static int getActiveThreads() {
+		return executor != null ? executor.getActiveCount() : 0;
+	}
+
+	public static long getSubmittedTasks() {
+		return submittedTasks.sum();
+	}
+
+	public static long getRejectedTasks() {
+		return rejectedTasks.sum();
+	}
+
+	public static long getCompletedTasks() {
+		return completedTasks.sum();
+	}
+
+	/**
+	 * Tempo medio passato in coda prima dell'esecuzione, dall'avvio.
+	 */
+	public static double getAverageWaitMillis() {
+		long completed = completedTasks.sum();
+		return completed > 0 ? totalWaitNanos.sum() / (double) completed / 1_000_000.0 : 0.0;
+	}
+
+	public static double getMaxWaitMillis() {
+		return maxWaitNanos.get() / 1_000_000.0;
+	}
+
+
+	private static void recordWait(long waitNanos) {
+		totalWaitNanos.add(waitNanos);
+		maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+	}
+
+
+	private static void onRejected() {
+		rejectedTasks.increment();
+
+		long now = System.currentTimeMillis();
+		long lastWarning = lastSaturationWarning.get();
+		if (now - lastWarning > SATURATION_WARNING_INTERVAL_MILLIS && lastSaturationWarning.compareAndSet(lastWarning, now)) {
+			BoostersPlugin.instance.getLogger().warning("Database executor saturated: " + getQueueDepth() + "/" + queueCapacity + " queued, "
+					+ getActiveThreads() + " running, average wait " + String.format("%.1f", getAverageWaitMillis()) + "ms, "
+					+ getRejectedTasks() + " tasks rejected so far");
+		}
+	}
+
+
+	private static ThreadFactory createThreadFactory(boolean virtualThreads) {
+		if (virtualThreads) {
+			try {
+				// Java 21+, tramite reflection per continuare a compilare con versioni precedenti
+				Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+				Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+				builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "Boosters SQL ", 0L);
+				return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			} catch (ReflectiveOperationException e) {
+				BoostersPlugin.instance.getLogger().log(Level.WARNING, "Virtual threads are not supported by this JVM, using platform threads", e);
+			}
+		}
+
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+		return runnable -> {
+			Thread thread = defaultFactory.newThread(runnable);
+			thread.setName("Boosters SQL " + threadCount.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+
+	public static enum Priority {
+
+		NORMAL,
+
+		/**
+		 * Task non essenziali, che vengono scartati per primi quando il database è lento.
+		 */
+		LOW;
+
+	}
+
+}
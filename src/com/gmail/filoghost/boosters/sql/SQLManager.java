@@ -29,159 +29,575 @@
 package com.gmail.filoghost.boosters.sql;
 
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import org.bukkit.ChatColor;
-import org.bukkit.entity.Player;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import com.gmail.filoghost.boosters.BoostersPlugin;
+import com.gmail.filoghost.boosters.Settings;
+import com.gmail.filoghost.boosters.bus.BoosterEvent.Type;
+import com.gmail.filoghost.boosters.bus.BoosterEvents;
+import com.gmail.filoghost.boosters.metrics.Histogram;
+import com.gmail.filoghost.boosters.metrics.Metrics;
+import com.gmail.filoghost.boosters.sql.SQLUtils.ResultReader;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import lombok.Cleanup;
-import wild.api.mysql.MySQL;
-import wild.api.mysql.SQLResult;
 
 public class SQLManager {
 	
-	private static MySQL mysql;
+	private static final String DEADLOCK_SQL_STATE = "40001";
+	private static final String ARCHIVE_CHECKPOINT_KEY = "archive_checkpoint";
+	private static final String ARCHIVE_COLUMNS = SQLColumns.ID + ", " + SQLColumns.PLAYER + ", " + SQLColumns.PLUGIN_ID + ", " + SQLColumns.MULTIPLIER + ", "
+			+ SQLColumns.DURATION + ", " + SQLColumns.ACTIVATED_AT + ", " + SQLColumns.EXPIRES_AT + ", " + SQLColumns.UPDATED_AT;
+	
+	/*
+	 * Solo le colonne lette da BoosterImpl, invece di SELECT *: le colonne aggiunte in futuro non vengono trasferite inutilmente.
+	 */
+	private static final String BOOSTER_COLUMNS = SQLColumns.ID + ", " + SQLColumns.PLAYER + ", " + SQLColumns.PLUGIN_ID + ", " + SQLColumns.MULTIPLIER + ", "
+			+ SQLColumns.DURATION + ", " + SQLColumns.ACTIVATED_AT;
+	
+	/*
+	 * Tutte le istruzioni sono costanti, costruite una sola volta: in questo modo ogni connessione le prepara una volta sola
+	 * (vedi PooledConnection) e il server riutilizza il piano già calcolato.
+	 */
+	private static final String
+	
+		SELECT_FIRST_BOOSTERS_PAGE = "(SELECT " + BOOSTER_COLUMNS + " FROM " + SQLColumns.TABLE + " "
+					+ "WHERE " + SQLColumns.PLAYER + " = ? "
+					+ "AND " + SQLColumns.EXPIRES_AT + " > ?"
+				+ ") UNION ALL ("
+					+ "SELECT " + BOOSTER_COLUMNS + " FROM " + SQLColumns.TABLE + " "
+					+ "WHERE " + SQLColumns.PLAYER + " = ? "
+					+ "AND " + SQLColumns.ACTIVATED_AT + " IS NULL "
+					+ "ORDER BY " + SQLColumns.ID + " LIMIT ?"
+				+ ");",
+		
+		SELECT_ACTIVE_BOOSTER = "SELECT " + BOOSTER_COLUMNS + " FROM " + SQLColumns.TABLE + " "
+				+ "WHERE " + SQLColumns.PLUGIN_ID + " = ? "
+				+ "AND " + SQLColumns.EXPIRES_AT + " > ?;",
+		
+		SELECT_ALL_ACTIVE_BOOSTERS = "SELECT " + BOOSTER_COLUMNS + " FROM " + SQLColumns.TABLE + " "
+				+ "WHERE " + SQLColumns.EXPIRES_AT + " > ?;",
+		
+		SELECT_CHANGED_BOOSTERS = "SELECT " + BOOSTER_COLUMNS + ", " + SQLColumns.UPDATED_AT + " FROM " + SQLColumns.TABLE + " "
+				+ "WHERE " + SQLColumns.UPDATED_AT + " > ? "
+				+ "ORDER BY " + SQLColumns.UPDATED_AT + ";",
+		
+		SELECT_DATABASE_TIME = "SELECT NOW(3);",
+		
+		SELECT_BOOSTER_BY_ID = "SELECT " + BOOSTER_COLUMNS + " FROM " + SQLColumns.TABLE + " WHERE " + SQLColumns.ID + " = ?;",
+		
+		SELECT_ACTIVATED_AT_BY_ID = "SELECT " + SQLColumns.ACTIVATED_AT + " FROM " + SQLColumns.TABLE + " WHERE " + SQLColumns.ID + " = ?;",
+		
+		INSERT_BOOSTER = "INSERT INTO " + SQLColumns.TABLE + " "
+				+ "(" + SQLColumns.PLAYER + ", " + SQLColumns.PLUGIN_ID + ", " + SQLColumns.MULTIPLIER + ", " + SQLColumns.DURATION + ") "
+				+ "VALUES (?, ?, ?, ?);",
+		
+		// Il join sulla stessa tabella legge i booster attivi con lock, quindi due attivazioni concorrenti non possono riuscire entrambe
+		CONDITIONAL_ACTIVATE = "UPDATE " + SQLColumns.TABLE + " AS target "
+				+ "LEFT JOIN " + SQLColumns.TABLE + " AS active "
+					+ "ON active." + SQLColumns.PLUGIN_ID + " = target." + SQLColumns.PLUGIN_ID + " "
+					+ "AND active." + SQLColumns.EXPIRES_AT + " > ? "
+				+ "SET target." + SQLColumns.ACTIVATED_AT + " = ? "
+				+ "WHERE target." + SQLColumns.ID + " = ? "
+				+ "AND target." + SQLColumns.PLAYER + " = ? "
+				+ "AND target." + SQLColumns.ACTIVATED_AT + " IS NULL "
+				+ "AND active." + SQLColumns.ID + " IS NULL;",
+		
+		INSERT_ARCHIVE_CHECKPOINT = "INSERT IGNORE INTO " + SQLColumns.META_TABLE + " (" + SQLColumns.META_KEY + ", " + SQLColumns.META_VALUE + ") VALUES (?, 0);",
+		
+		SELECT_ARCHIVE_CHUNK_END = "SELECT MAX(" + SQLColumns.ID + ") FROM ("
+					+ "SELECT " + SQLColumns.ID + " FROM " + SQLColumns.TABLE + " "
+					+ "WHERE " + SQLColumns.ID + " > ? "
+					+ "ORDER BY " + SQLColumns.ID + " LIMIT ?"
+				+ ") AS chunk;",
+		
+		// INSERT IGNORE: se una transazione precedente è stata interrotta dopo l'inserimento, le righe già copiate non causano errori
+		COPY_TO_HISTORY = "INSERT IGNORE INTO " + SQLColumns.HISTORY_TABLE + " (" + ARCHIVE_COLUMNS + ") "
+				+ "SELECT " + ARCHIVE_COLUMNS + " FROM " + SQLColumns.TABLE + " "
+				+ "WHERE " + SQLColumns.ID + " > ? AND " + SQLColumns.ID + " <= ? "
+				+ "AND " + SQLColumns.EXPIRES_AT + " <= ?;",
+		
+		DELETE_ARCHIVED = "DELETE FROM " + SQLColumns.TABLE + " "
+				+ "WHERE " + SQLColumns.ID + " > ? AND " + SQLColumns.ID + " <= ? "
+				+ "AND " + SQLColumns.EXPIRES_AT + " <= ?;";
+	
+	/*
+	 * Le query con parti variabili vengono costruite una volta per forma (combinazione di filtri o dimensione della lista IN) e poi riutilizzate.
+	 */
+	private static final Map<Integer, String> selectByFilterShape = Maps.newConcurrentMap();
+	private static final Map<Integer, String> countByFilterShape = Maps.newConcurrentMap();
+	private static final Map<Integer, String> selectFirstPagesBySize = Maps.newConcurrentMap();
+	
+	private static final ResultReader<BoosterImpl> SINGLE_BOOSTER_READER = result -> result.next() ? new BoosterImpl(result) : null;
+	private static final ResultReader<List<BoosterImpl>> BOOSTERS_LIST_READER = result -> {
+		List<BoosterImpl> boostersList = Lists.newArrayList();
+		while (result.next()) {
+			boostersList.add(new BoosterImpl(result));
+		}
+		return boostersList;
+	};
+	
+	private static final Histogram
+		GET_FIRST_BOOSTERS_PAGE_LATENCY = Metrics.histogram("sql_get_first_boosters_page"),
+		GET_BOOSTERS_LATENCY = Metrics.histogram("sql_get_boosters"),
+		COUNT_BOOSTERS_LATENCY = Metrics.histogram("sql_count_boosters"),
+		GET_FIRST_BOOSTERS_PAGES_LATENCY = Metrics.histogram("sql_get_first_boosters_pages"),
+		GET_ACTIVE_BOOSTER_LATENCY = Metrics.histogram("sql_get_active_booster"),
+		GET_ALL_ACTIVE_BOOSTERS_LATENCY = Metrics.histogram("sql_get_all_active_boosters"),
+		GET_CHANGED_BOOSTERS_LATENCY = Metrics.histogram("sql_get_changed_boosters"),
+		GET_DATABASE_TIME_LATENCY = Metrics.histogram("sql_get_database_time"),
+		CREATE_BOOSTER_LATENCY = Metrics.histogram("sql_create_booster"),
+		CREATE_BOOSTERS_LATENCY = Metrics.histogram("sql_create_boosters"),
+		ACTIVATE_BOOSTER_LATENCY = Metrics.histogram("sql_activate_booster"),
+		REPLAY_ACTIVATION_LATENCY = Metrics.histogram("sql_replay_activation"),
+		ARCHIVE_EXPIRED_CHUNK_LATENCY = Metrics.histogram("sql_archive_expired_chunk");
+	
+	private static volatile ConnectionPool pool;
 
-	public static void connect(String host, int port, String database, String user, String pass) throws SQLException, ClassNotFoundException {
-		mysql = new MySQL(host, port, database, user, pass);
-		mysql.connect();
+	public static void connect(Settings settings) throws SQLException, ClassNotFoundException {
+		Class.forName("com.mysql.jdbc.Driver");
+		
+		// Senza timeout un server irraggiungibile bloccherebbe l'apertura di una connessione, o una query già inviata, per diversi minuti
+		long connectionTimeoutMillis = TimeUnit.SECONDS.toMillis(settings.mysql_pool_connection_timeout_seconds);
+		long socketTimeoutMillis = TimeUnit.SECONDS.toMillis(settings.mysql_socket_timeout_seconds);
+		
+		ConnectionPool newPool = new ConnectionPool(
+				"jdbc:mysql://" + settings.mysql_host + ":" + settings.mysql_port + "/" + settings.mysql_database + "?useUnicode=true&characterEncoding=utf8&rewriteBatchedStatements=true"
+						+ "&useServerPrepStmts=true&cachePrepStmts=true&prepStmtCacheSize=256&prepStmtCacheSqlLimit=2048"
+						+ "&connectTimeout=" + connectionTimeoutMillis + "&socketTimeout=" + socketTimeoutMillis,
+				settings.mysql_user,
+				settings.mysql_pass,
+				settings.mysql_pool_min_size,
+				settings.mysql_pool_max_size,
+				connectionTimeoutMillis,
+				TimeUnit.SECONDS.toMillis(settings.mysql_pool_validation_interval_seconds),
+				TimeUnit.MINUTES.toMillis(settings.mysql_pool_max_lifetime_minutes));
+		try {
+			newPool.start();
+		} catch (SQLException e) {
+			// Chiude le connessioni aperte prima dell'errore, verrà creato un nuovo pool al prossimo tentativo
+			newPool.close();
+			throw e;
+		}
+		pool = newPool;
+		
+		Metrics.gauge("sql_pool_active_connections", newPool::getActiveConnections);
+		Metrics.gauge("sql_pool_idle_connections", newPool::getIdleConnections);
+	}
+	
+	public static boolean isConnected() {
+		return pool != null;
 	}
 	
 	public static void close() {
-		if (mysql != null) {
-			mysql.close();
+		if (pool != null) {
+			pool.close();
 		}
 	}
 	
-	public static void createTable() throws SQLException {
-		mysql.update("CREATE TABLE IF NOT EXISTS " + SQLColumns.TABLE + " ("
-				+ SQLColumns.ID + " INT NOT NULL AUTO_INCREMENT, "
-				+ SQLColumns.PLAYER + " varchar(20) NOT NULL, "
-				+ SQLColumns.PLUGIN_ID + " varchar(30) NOT NULL, "
-				+ SQLColumns.MULTIPLIER + " TINYINT NOT NULL, "
-				+ SQLColumns.DURATION + " INT NOT NULL, "
-				+ SQLColumns.ACTIVATED_AT + " BIGINT, "
-				+ "PRIMARY KEY (" + SQLColumns.ID + ")"
-				+ ") ENGINE = InnoDB DEFAULT CHARSET = UTF8;");
+	public static void migrateSchema() throws SQLException {
+		@Cleanup PooledConnection connection = getConnection();
+		SQLMigrations.migrate(connection);
 	}
 	
 	/**
-	 * Tutti i booster ancora da attivare o che sono attivi (e non scaduti) al momento.
+	 * La prima pagina dei booster di un giocatore: tutti quelli attivi, seguiti dai primi da attivare in ordine di ID.
+	 * Gli attivi sono pochi (al massimo uno per plugin ID), quindi il numero di righe lette resta limitato.
 	 */
-	public static List<BoosterImpl> getNonExpiredBoosters(String playerName) throws SQLException {
-		long now = System.currentTimeMillis();
-		@Cleanup SQLResult result = mysql.preparedQuery("SELECT * FROM " + SQLColumns.TABLE + " "
-				+ "WHERE " + SQLColumns.PLAYER + " = ? "
-				+ "AND ("
-					+ SQLColumns.ACTIVATED_AT + " IS NULL "
-					+ "OR (? < " + SQLColumns.ACTIVATED_AT + " + " + SQLColumns.DURATION + ")"
-				+ ");", playerName, now);
-		
-		List<BoosterImpl> boostersList = Lists.newArrayList();
-		
-		while (result.next()) {
-			boostersList.add(new BoosterImpl(result));
-		}
-
-		return boostersList;
+	public static List<BoosterImpl> getFirstBoostersPage(String playerName, int pendingLimit) throws SQLException {
+		return timed(GET_FIRST_BOOSTERS_PAGE_LATENCY, () -> {
+			long now = System.currentTimeMillis();
+			return query(SELECT_FIRST_BOOSTERS_PAGE, BOOSTERS_LIST_READER, new MaskedValue(playerName), now, new MaskedValue(playerName), pendingLimit);
+		});
+	}
+	
+	
+	/**
+	 * I booster che corrispondono al filtro con ID successivo a quello indicato, in ordine di ID (paginazione keyset).
+	 * Per la prima pagina si usa 0 come ID, per le successive l'ID dell'ultimo booster della pagina precedente.
+	 */
+	public static List<BoosterImpl> getBoosters(BoosterFilter filter, int afterID, int limit) throws SQLException {
+		return timed(GET_BOOSTERS_LATENCY, () -> {
+			String sql = selectByFilterShape.computeIfAbsent(filter.getShape(), shape -> "SELECT " + BOOSTER_COLUMNS + " FROM " + SQLColumns.TABLE + " "
+					+ "WHERE " + filter.buildConditions() + " "
+					+ "AND " + SQLColumns.ID + " > ? ORDER BY " + SQLColumns.ID + " LIMIT ?;");
+			
+			List<Object> params = Lists.newArrayList();
+			filter.addParams(params, System.currentTimeMillis());
+			params.add(afterID);
+			params.add(limit);
+			
+			return query(sql, BOOSTERS_LIST_READER, params.toArray());
+		});
+	}
+	
+	
+	/**
+	 * Il numero di booster che corrispondono al filtro, senza leggere le righe.
+	 */
+	public static int countBoosters(BoosterFilter filter) throws SQLException {
+		return timed(COUNT_BOOSTERS_LATENCY, () -> {
+			String sql = countByFilterShape.computeIfAbsent(filter.getShape(), shape -> "SELECT COUNT(*) FROM " + SQLColumns.TABLE + " "
+					+ "WHERE " + filter.buildConditions() + ";");
+			
+			List<Object> params = Lists.newArrayList();
+			filter.addParams(params, System.currentTimeMillis());
+			
+			return query(sql, result -> result.next() ? result.getInt(1) : 0, params.toArray());
+		});
+	}
+	
+	
+	/**
+	 * Come {@link #getFirstBoostersPage(String, int)}, ma per più giocatori con una sola query.
+	 * Le chiavi della mappa sono i nomi dei giocatori in minuscolo, i giocatori senza booster non sono presenti.
+	 */
+	public static Map<String, List<BoosterImpl>> getFirstBoostersPages(Collection<String> playerNames, int pendingLimit) throws SQLException {
+		return timed(GET_FIRST_BOOSTERS_PAGES_LATENCY, () -> {
+			if (playerNames.isEmpty()) {
+				return Collections.emptyMap();
+			}
+			
+			// La lista IN viene allungata alla potenza di 2 successiva ripetendo l'ultimo nome, così le forme possibili della query restano poche
+			int listSize = Integer.highestOneBit(playerNames.size());
+			if (listSize < playerNames.size()) {
+				listSize <<= 1;
+			}
+			
+			long now = System.currentTimeMillis();
+			Object[] params = new Object[listSize + 1];
+			int index = 0;
+			for (String playerName : playerNames) {
+				params[index++] = new MaskedValue(playerName);
+			}
+			while (index < listSize) {
+				params[index] = params[index - 1];
+				index++;
+			}
+			params[index] = now;
+			
+			String sql = selectFirstPagesBySize.computeIfAbsent(listSize, size -> "SELECT " + BOOSTER_COLUMNS + " FROM " + SQLColumns.TABLE + " "
+					+ "WHERE " + SQLColumns.PLAYER + " IN (" + String.join(", ", Collections.nCopies(size, "?")) + ") "
+					+ "AND ("
+						+ SQLColumns.ACTIVATED_AT + " IS NULL "
+						+ "OR " + SQLColumns.EXPIRES_AT + " > ?"
+					+ ") ORDER BY " + SQLColumns.ID + ";");
+			
+			List<BoosterImpl> boosters = query(sql, BOOSTERS_LIST_READER, params);
+			
+			// Senza funzioni finestra non si può limitare per giocatore nella query: i booster da attivare in eccesso vengono scartati qui
+			Map<String, List<BoosterImpl>> boostersByPlayer = Maps.newHashMap();
+			Map<String, Integer> pendingCounts = Maps.newHashMap();
+			for (BoosterImpl booster : boosters) {
+				String playerName = booster.getPlayerName().toLowerCase(Locale.ROOT);
+				if (!booster.wasActivated() && pendingCounts.merge(playerName, 1, Integer::sum) > pendingLimit) {
+					continue;
+				}
+				boostersByPlayer.computeIfAbsent(playerName, name -> Lists.newArrayList()).add(booster);
+			}
+			
+			// Come nella query singola, gli attivi prima di quelli da attivare
+			for (List<BoosterImpl> playerBoosters : boostersByPlayer.values()) {
+				playerBoosters.sort((first, second) -> Boolean.compare(second.wasActivated(), first.wasActivated()));
+			}
+			return boostersByPlayer;
+		});
 	}
 	
 	
 	public static BoosterImpl getActiveBooster(String pluginID) throws SQLException {
-		long now = System.currentTimeMillis();
-		@Cleanup SQLResult result = mysql.preparedQuery("SELECT * FROM " + SQLColumns.TABLE + " "
-				+ "WHERE " + SQLColumns.PLUGIN_ID + " = ? "
-				+ "AND " + SQLColumns.ACTIVATED_AT + " IS NOT NULL "
-				+ "AND (? < " + SQLColumns.ACTIVATED_AT + " + " + SQLColumns.DURATION + ");", pluginID, now);
-		
-		if (result.next()) {
-			return new BoosterImpl(result);
-		} else {
-			return null;
-		}
+		return timed(GET_ACTIVE_BOOSTER_LATENCY, () -> {
+			long now = System.currentTimeMillis();
+			return query(SELECT_ACTIVE_BOOSTER, SINGLE_BOOSTER_READER, pluginID, now);
+		});
 	}
 	
 	
 	public static List<BoosterImpl> getAllActiveBoosters() throws SQLException {
-		long now = System.currentTimeMillis();
-		@Cleanup SQLResult result = mysql.preparedQuery("SELECT * FROM " + SQLColumns.TABLE + " "
-				+ "WHERE " + SQLColumns.ACTIVATED_AT + " IS NOT NULL "
-				+ "AND (? < " + SQLColumns.ACTIVATED_AT + " + " + SQLColumns.DURATION + ");", now);
-		
-		List<BoosterImpl> activeBoosters = Lists.newArrayList();
-		
-		mainLoop: while (result.next()) {
-			BoosterImpl booster = new BoosterImpl(result);
+		return timed(GET_ALL_ACTIVE_BOOSTERS_LATENCY, () -> {
+			long now = System.currentTimeMillis();
+			List<BoosterImpl> activeBoosters = Lists.newArrayList();
+			Set<String> pluginIDs = Sets.newHashSet();
 			
-			for (BoosterImpl alreadyInsertedBooster : activeBoosters) {
-				if (alreadyInsertedBooster.getPluginID().equals(booster.getPluginID())) {
+			for (BoosterImpl booster : query(SELECT_ALL_ACTIVE_BOOSTERS, BOOSTERS_LIST_READER, now)) {
+				
+				if (!pluginIDs.add(booster.getPluginID())) {
 					try {
 						throw new IllegalStateException("Multiple boosters active at the same time for plugin ID " + booster.getPluginID());
 					} catch (Exception e) {
 						e.printStackTrace();
 					}
-					continue mainLoop;
+					continue;
 				}
+				
+				activeBoosters.add(booster);
 			}
 			
-			activeBoosters.add(booster);
-		}
-		
-		return activeBoosters;
+			return activeBoosters;
+		});
+	}
+	
+	
+	/**
+	 * Tutte le righe modificate (create, attivate o annullate) dopo l'istante indicato, secondo l'orologio del database.
+	 */
+	public static BoosterChanges getChangedBoosters(Timestamp since) throws SQLException {
+		return timed(GET_CHANGED_BOOSTERS_LATENCY, () -> {
+			return query(SELECT_CHANGED_BOOSTERS, result -> {
+						
+						List<BoosterChanges.Change> changes = Lists.newArrayList();
+						Timestamp latestUpdate = since;
+						
+						while (result.next()) {
+							Timestamp updatedAt = result.getTimestamp(SQLColumns.UPDATED_AT);
+							changes.add(new BoosterChanges.Change(new BoosterImpl(result), updatedAt.getTime()));
+							if (updatedAt.after(latestUpdate)) {
+								latestUpdate = updatedAt;
+							}
+						}
+						
+						return new BoosterChanges(changes, latestUpdate);
+					}, since);
+		});
+	}
+	
+	
+	public static Timestamp getDatabaseTime() throws SQLException {
+		return timed(GET_DATABASE_TIME_LATENCY, () -> {
+			return query(SELECT_DATABASE_TIME, result -> {
+				result.next();
+				return result.getTimestamp(1);
+			});
+		});
 	}
 	
 	
 	public static void createBooster(String playerName, String pluginID, int multiplier, long durationMillis) throws SQLException {
-		mysql.preparedUpdate("INSERT INTO " + SQLColumns.TABLE + " "
-				+ "(" + SQLColumns.PLAYER + ", " + SQLColumns.PLUGIN_ID + ", " + SQLColumns.MULTIPLIER + ", " + SQLColumns.DURATION + ") "
-				+ "VALUES (?, ?, ?, ?);",
-				playerName, pluginID, multiplier, durationMillis);
-		
-		DBCache.invalidate(playerName);
+		timed(CREATE_BOOSTER_LATENCY, () -> {
+			update(INSERT_BOOSTER, new MaskedValue(playerName), pluginID, multiplier, durationMillis);
+			
+			DBCache.invalidate(playerName);
+			BoosterEvents.publish(Type.CREATED, new BoosterImpl(playerName, 0, pluginID, multiplier, durationMillis, null));
+			return null;
+		});
 	}
 	
 
-	public static boolean activateBooster(Player player, int id) throws SQLException {
-		@Cleanup SQLResult result = mysql.preparedQuery("SELECT * FROM " + SQLColumns.TABLE + " WHERE " + SQLColumns.ID + " = ?;", id);
-		if (!result.next()) {
-			player.sendMessage(ChatColor.RED + "Errore: ID booster non trovato.");
-			return false;
+	/**
+	 * Crea più booster in una sola transazione con un batch JDBC, e aggiorna una sola volta la cache di ogni giocatore coinvolto.
+	 * I booster passati servono solo come dati (ID e attivazione vengono ignorati).
+	 */
+	public static void createBoosters(List<BoosterImpl> boosters) throws SQLException {
+		timed(CREATE_BOOSTERS_LATENCY, () -> {
+			if (boosters.isEmpty()) {
+				return null;
+			}
+			
+			List<Object[]> rows = Lists.newArrayListWithCapacity(boosters.size());
+			Map<String, BoosterImpl> boostersByPlayer = Maps.newHashMap();
+			for (BoosterImpl booster : boosters) {
+				rows.add(new Object[] {booster.getPlayerName(), booster.getPluginID(), booster.getMultiplier(), booster.getDurationMillis()});
+				boostersByPlayer.putIfAbsent(booster.getPlayerName().toLowerCase(Locale.ROOT), booster);
+			}
+			
+			@Cleanup PooledConnection connection = getConnection();
+			SQLUtils.batchUpdate(connection, INSERT_BOOSTER, rows);
+			
+			for (BoosterImpl booster : boostersByPlayer.values()) {
+				DBCache.invalidate(booster.getPlayerName());
+				BoosterEvents.publish(Type.CREATED, booster);
+			}
+			return null;
+		});
+	}
+	
+
+	/**
+	 * Attiva un booster con una sola istruzione condizionale: l'aggiornamento avviene solo se il booster appartiene al giocatore,
+	 * non è ancora stato attivato e non ci sono altri booster attivi per lo stesso plugin ID.
+	 * Solo in caso di fallimento viene eseguita una seconda query per capirne il motivo.
+	 */
+	public static ActivationResult activateBooster(String playerName, BoosterImpl booster) throws SQLException {
+		return timed(ACTIVATE_BOOSTER_LATENCY, () -> {
+			if (!BoostersPlugin.instance.registeredPluginsIDs.contains(booster.getPluginID())) {
+				return ActivationResult.PLUGIN_NOT_REGISTERED;
+			}
+			
+			long now = System.currentTimeMillis();
+			int updatedRows;
+			
+			try {
+				updatedRows = conditionalActivateWithRetry(playerName, booster.getId(), now);
+			} catch (SQLException e) {
+				if (!SQLUtils.isConnectionError(e)) {
+					throw e;
+				}
+				
+				// Database non raggiungibile: l'attivazione viene registrata localmente e salvata quando torna disponibile
+				ActivationResult offlineResult = ActivationJournal.activateOffline(playerName, booster, now);
+				if (offlineResult == null) {
+					throw e;
+				}
+				return offlineResult;
+			}
+			
+			if (updatedRows == 0) {
+				return getActivationFailure(playerName, booster.getId());
+			}
+			
+			BoosterImpl activatedBooster = new BoosterImpl(booster.getPlayerName(), booster.getId(), booster.getPluginID(), booster.getMultiplier(), booster.getDurationMillis(), now);
+			DBCache.invalidate(playerName);
+			
+			BoostersPlugin.instance.activeBoosters.put(activatedBooster);
+			BoosterEvents.publish(Type.ACTIVATED, activatedBooster);
+			return ActivationResult.SUCCESS;
+		});
+	}
+	
+	
+	/**
+	 * Salva un'attivazione registrata da {@link ActivationJournal} con la sua data originale.
+	 * Fallisce se nel frattempo il booster è stato attivato altrove, o se un altro booster dello stesso plugin ID era attivo in quel momento.
+	 */
+	protected static ActivationResult replayActivation(BoosterImpl activatedBooster) throws SQLException {
+		return timed(REPLAY_ACTIVATION_LATENCY, () -> {
+			String playerName = activatedBooster.getPlayerName();
+			long activatedAt = activatedBooster.getActivatedAt();
+			
+			if (conditionalActivateWithRetry(playerName, activatedBooster.getId(), activatedAt) > 0) {
+				DBCache.invalidate(playerName);
+				BoosterEvents.publish(Type.ACTIVATED, activatedBooster);
+				return ActivationResult.SUCCESS;
+			}
+			
+			ActivationResult failure = getActivationFailure(playerName, activatedBooster.getId());
+			if (failure == ActivationResult.ALREADY_ACTIVATED) {
+				// Potrebbe essere già stata salvata prima di un riavvio, senza che il registro fosse aggiornato
+				Long savedActivatedAt = query(SELECT_ACTIVATED_AT_BY_ID, result -> result.next() ? result.getLong(1) : null, activatedBooster.getId());
+				if (savedActivatedAt != null && savedActivatedAt == activatedAt) {
+					return ActivationResult.SUCCESS;
+				}
+			}
+			return failure;
+		});
+	}
+	
+	
+	private static int conditionalActivateWithRetry(String playerName, int id, long now) throws SQLException {
+		try {
+			return conditionalActivate(playerName, id, now);
+		} catch (SQLException e) {
+			if (!DEADLOCK_SQL_STATE.equals(e.getSQLState())) {
+				throw e;
+			}
+			// Due attivazioni concorrenti per lo stesso plugin ID: una delle due viene annullata da InnoDB, si riprova una volta
+			return conditionalActivate(playerName, id, now);
+		}
+	}
+	
+	
+	private static int conditionalActivate(String playerName, int id, long now) throws SQLException {
+		return update(CONDITIONAL_ACTIVATE, now, now, id, new MaskedValue(playerName));
+	}
+	
+	
+	private static ActivationResult getActivationFailure(String playerName, int id) throws SQLException {
+		BoosterImpl booster = query(SELECT_BOOSTER_BY_ID, SINGLE_BOOSTER_READER, id);
+		if (booster == null) {
+			return ActivationResult.NOT_FOUND;
 		}
 		
-		BoosterImpl booster = new BoosterImpl(result);
-		if (!booster.getPlayerName().equalsIgnoreCase(player.getName())) {
-			player.sendMessage(ChatColor.RED + "Errore: questo booster non ti appartiene.");
-			return false;
+		if (!booster.getPlayerName().equalsIgnoreCase(playerName)) {
+			return ActivationResult.NOT_OWNER;
 		}
 		if (booster.wasActivated()) {
-			player.sendMessage(ChatColor.RED + "Errore: questo booster è già stato attivato.");
-			return false;
+			return ActivationResult.ALREADY_ACTIVATED;
 		}
 		
-		if (!BoostersPlugin.instance.registeredPluginsIDs.contains(booster.getPluginID())) {
-			player.sendMessage(ChatColor.RED + "Errore: non puoi attivare il booster in questa modalità.");
-			return false;
+		return ActivationResult.OTHER_BOOSTER_ACTIVE;
+	}
+	
+
+	/**
+	 * Sposta nello storico i booster scaduti prima di expiredBefore tra i prossimi chunkSize ID, a partire dall'ultimo punto raggiunto
+	 * (salvato nella tabella meta, quindi si riprende da lì anche dopo un riavvio). Arrivati in fondo alla tabella si ricomincia dall'inizio.
+	 * Ogni chiamata blocca solo un piccolo intervallo di ID e per una transazione breve. Restituisce il numero di booster archiviati.
+	 */
+	public static int archiveExpiredChunk(int chunkSize, long expiredBefore) throws SQLException {
+		return timed(ARCHIVE_EXPIRED_CHUNK_LATENCY, () -> {
+			@Cleanup PooledConnection connection = getConnection();
+			SQLUtils.update(connection, INSERT_ARCHIVE_CHECKPOINT, ARCHIVE_CHECKPOINT_KEY);
+			
+			return SQLUtils.transaction(connection, () -> {
+				// Il lock sul punto di ripresa evita che più server archivino lo stesso intervallo contemporaneamente
+				long checkpoint = SQLMigrations.getMetaValue(connection, ARCHIVE_CHECKPOINT_KEY, true);
+				Integer lastID = SQLUtils.query(connection, SELECT_ARCHIVE_CHUNK_END, result -> {
+							result.next();
+							int maxID = result.getInt(1);
+							return result.wasNull() ? null : maxID;
+						}, checkpoint, chunkSize);
+				
+				if (lastID == null) {
+					SQLMigrations.setMetaValue(connection, ARCHIVE_CHECKPOINT_KEY, 0);
+					return 0;
+				}
+				
+				SQLUtils.update(connection, COPY_TO_HISTORY, checkpoint, lastID, expiredBefore);
+				int archivedRows = SQLUtils.update(connection, DELETE_ARCHIVED, checkpoint, lastID, expiredBefore);
+				
+				SQLMigrations.setMetaValue(connection, ARCHIVE_CHECKPOINT_KEY, lastID);
+				return archivedRows;
+			});
+		});
+	}
+	
+
+	/*
+	 * Durante l'avvio il pool non esiste ancora: il database non è irraggiungibile, semplicemente non è pronto.
+	 */
+	protected static PooledConnection getConnection() throws SQLException {
+		ConnectionPool currentPool = pool;
+		if (currentPool == null) {
+			throw new DatabaseUnavailableException("Database not connected yet");
 		}
-		
-		if (getActiveBooster(booster.getPluginID()) != null) {
-			player.sendMessage(ChatColor.RED + "Errore: c'è già un booster attivo in questa modalità.");
-			return false;
+		return currentPool.getConnection();
+	}
+	
+	
+	private static <T> T timed(Histogram latency, SQLCall<T> call) throws SQLException {
+		long startTime = System.nanoTime();
+		try {
+			return call.call();
+		} finally {
+			latency.recordSince(startTime);
 		}
-		
-		long now = System.currentTimeMillis();
-		mysql.preparedUpdate("UPDATE " + SQLColumns.TABLE + " SET " + SQLColumns.ACTIVATED_AT + " = ? WHERE " + SQLColumns.ID + " = ?;", now, id);
-		booster.setActivatedAt(now);
-		
-		DBCache.invalidate(player.getName());
-		
-		BoostersPlugin.instance.activeBoostersByPluginID.put(booster.getPluginID(), booster);
-		return true;
 	}
 	
-
-	public static void checkConnection() {
-		mysql.isConnectionValid();
+	
+	private static <T> T query(String sql, ResultReader<T> reader, Object... params) throws SQLException {
+		@Cleanup PooledConnection connection = getConnection();
+		return SQLUtils.query(connection, sql, reader, params);
+	}
+	
+	
+	private static int update(String sql, Object... params) throws SQLException {
+		@Cleanup PooledConnection connection = getConnection();
+		return SQLUtils.update(connection, sql, params);
+	}
+	
+	
+	private static interface SQLCall<T> {
+		
+		T call() throws SQLException;
+		
 	}
 
 }
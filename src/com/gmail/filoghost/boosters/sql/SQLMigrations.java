@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.sql;
+
+import java.sql.SQLException;
+
+/**
+ * Aggiornamenti incrementali dello schema del database.
+ * La versione corrente è salvata nella tabella meta, ogni migrazione viene eseguita una sola volta e in ordine.
+ */
+public class SQLMigrations {
+
+	private static final String SCHEMA_VERSION_KEY = "schema_version";
+	private static final String LOCK_NAME = "boosters_migrations";
+	private static final int LOCK_TIMEOUT_SECONDS = 30;
+
+	private static final String
+		SELECT_META_VALUE = "SELECT " + SQLColumns.META_VALUE + " FROM " + SQLColumns.META_TABLE + " WHERE " + SQLColumns.META_KEY + " = ?;",
+		SELECT_META_VALUE_FOR_UPDATE = "SELECT " + SQLColumns.META_VALUE + " FROM " + SQLColumns.META_TABLE + " WHERE " + SQLColumns.META_KEY + " = ? FOR UPDATE;",
+		UPSERT_META_VALUE = "INSERT INTO " + SQLColumns.META_TABLE + " (" + SQLColumns.META_KEY + ", " + SQLColumns.META_VALUE + ") VALUES (?, ?) "
+				+ "ON DUPLICATE KEY UPDATE " + SQLColumns.META_VALUE + " = VALUES(" + SQLColumns.META_VALUE + ");";
+
+	/*
+	 * Una sola istruzione per versione: in MySQL le istruzioni DDL non sono transazionali,
+	 * quindi in questo modo una migrazione o viene applicata completamente o per niente.
+	 * Non modificare mai le migrazioni già esistenti, aggiungerne di nuove in fondo.
+	 */
+	private static final String[] MIGRATIONS = {
+
+		// Versione 1: tabella originale (le tabelle già esistenti vengono considerate a questa versione)
+		"CREATE TABLE IF NOT EXISTS " + SQLColumns.TABLE + " ("
+				+ SQLColumns.ID + " INT NOT NULL AUTO_INCREMENT, "
+				+ SQLColumns.PLAYER + " varchar(20) NOT NULL, "
+				+ SQLColumns.PLUGIN_ID + " varchar(30) NOT NULL, "
+				+ SQLColumns.MULTIPLIER + " TINYINT NOT NULL, "
+				+ SQLColumns.DURATION + " INT NOT NULL, "
+				+ SQLColumns.ACTIVATED_AT + " BIGINT, "
+				+ "PRIMARY KEY (" + SQLColumns.ID + ")"
+				+ ") ENGINE = InnoDB DEFAULT CHARSET = UTF8;",
+
+		// Versione 2: la durata è in millisecondi, un INT va in overflow dopo circa 24.8 giorni
+		"ALTER TABLE " + SQLColumns.TABLE + " MODIFY " + SQLColumns.DURATION + " BIGINT NOT NULL;",
+
+		// Versione 3: scadenza salvata e indicizzata, così i filtri sui booster non scaduti diventano range scan
+		"ALTER TABLE " + SQLColumns.TABLE + " "
+				+ "ADD COLUMN " + SQLColumns.EXPIRES_AT + " BIGINT AS (" + SQLColumns.ACTIVATED_AT + " + " + SQLColumns.DURATION + ") STORED, "
+				+ "ADD INDEX idx_" + SQLColumns.EXPIRES_AT + " (" + SQLColumns.EXPIRES_AT + ");",
+
+		// Versione 4: ricerche per giocatore e per plugin ID
+		"ALTER TABLE " + SQLColumns.TABLE + " "
+				+ "ADD INDEX idx_" + SQLColumns.PLAYER + "_" + SQLColumns.ACTIVATED_AT + " (" + SQLColumns.PLAYER + ", " + SQLColumns.ACTIVATED_AT + "), "
+				+ "ADD INDEX idx_" + SQLColumns.PLUGIN_ID + "_" + SQLColumns.ACTIVATED_AT + " (" + SQLColumns.PLUGIN_ID + ", " + SQLColumns.ACTIVATED_AT + ");",
+
+		// Versione 5: data dell'ultima modifica, per leggere solo le righe cambiate dall'ultimo controllo
+		"ALTER TABLE " + SQLColumns.TABLE + " "
+				+ "ADD COLUMN " + SQLColumns.UPDATED_AT + " TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3), "
+				+ "ADD INDEX idx_" + SQLColumns.UPDATED_AT + " (" + SQLColumns.UPDATED_AT + ");",
+
+		// Versione 6: storico dei booster scaduti, spostati fuori dalla tabella principale da ArchiveTask
+		"CREATE TABLE IF NOT EXISTS " + SQLColumns.HISTORY_TABLE + " ("
+				+ SQLColumns.ID + " INT NOT NULL, "
+				+ SQLColumns.PLAYER + " varchar(20) NOT NULL, "
+				+ SQLColumns.PLUGIN_ID + " varchar(30) NOT NULL, "
+				+ SQLColumns.MULTIPLIER + " TINYINT NOT NULL, "
+				+ SQLColumns.DURATION + " BIGINT NOT NULL, "
+				+ SQLColumns.ACTIVATED_AT + " BIGINT NOT NULL, "
+				+ SQLColumns.EXPIRES_AT + " BIGINT NOT NULL, "
+				+ SQLColumns.UPDATED_AT + " TIMESTAMP(3) NOT NULL, "
+				+ SQLColumns.ARCHIVED_AT + " TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3), "
+				+ "PRIMARY KEY (" + SQLColumns.ID + "), "
+				+ "INDEX idx_" + SQLColumns.PLAYER + " (" + SQLColumns.PLAYER + ")"
+				+ ") ENGINE = InnoDB DEFAULT CHARSET = UTF8;",
+	};
+
+
+	public static int getLatestVersion() {
+		return MIGRATIONS.length;
+	}
+
+
+	/**
+	 * Porta lo schema all'ultima versione. Il lock evita che più server avviati insieme eseguano le stesse migrazioni.
+	 */
+	public static void migrate(PooledConnection connection) throws SQLException {
+		SQLUtils.update(connection, "CREATE TABLE IF NOT EXISTS " + SQLColumns.META_TABLE + " ("
+				+ SQLColumns.META_KEY + " varchar(50) NOT NULL, "
+				+ SQLColumns.META_VALUE + " BIGINT NOT NULL, "
+				+ "PRIMARY KEY (" + SQLColumns.META_KEY + ")"
+				+ ") ENGINE = InnoDB DEFAULT CHARSET = UTF8;");
+
+		acquireLock(connection);
+		try {
+			int currentVersion = (int) getMetaValue(connection, SCHEMA_VERSION_KEY, false);
+			if (currentVersion > MIGRATIONS.length) {
+				throw new SQLException("Database schema version " + currentVersion + " is newer than the supported version " + MIGRATIONS.length);
+			}
+
+			for (int version = currentVersion + 1; version <= MIGRATIONS.length; version++) {
+				SQLUtils.update(connection, MIGRATIONS[version - 1]);
+				setMetaValue(connection, SCHEMA_VERSION_KEY, version);
+			}
+		} finally {
+			SQLUtils.query(connection, "SELECT RELEASE_LOCK(?);", result -> null, LOCK_NAME);
+		}
+	}
+
+
+	private static void acquireLock(PooledConnection connection) throws SQLException {
+		boolean locked = SQLUtils.query(connection, "SELECT GET_LOCK(?, ?);", result -> result.next() && result.getInt(1) == 1, LOCK_NAME, LOCK_TIMEOUT_SECONDS);
+		if (!locked) {
+			throw new SQLException("Could not acquire the schema migrations lock");
+		}
+	}
+
+
+	/**
+	 * Legge un valore dalla tabella meta (0 se assente). Con forUpdate la riga resta bloccata fino alla fine della transazione.
+	 */
+	protected static long getMetaValue(PooledConnection connection, String key, boolean forUpdate) throws SQLException {
+		return SQLUtils.query(connection, forUpdate ? SELECT_META_VALUE_FOR_UPDATE : SELECT_META_VALUE,
+				result -> result.next() ? result.getLong(SQLColumns.META_VALUE) : 0L, key);
+	}
+
+
+	protected static void setMetaValue(PooledConnection connection, String key, long value) throws SQLException {
+		SQLUtils.update(connection, UPSERT_META_VALUE, key, value);
+	}
+
+}
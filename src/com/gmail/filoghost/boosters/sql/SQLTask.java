@@ -30,27 +30,42 @@ package com.gmail.filoghost.boosters.sql;
 
 import java.sql.SQLException;
 
-import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 
-import com.gmail.filoghost.boosters.BoostersPlugin;
+import com.gmail.filoghost.boosters.sql.SQLExecutor.Priority;
 
 public abstract interface SQLTask {
 	
+	public static final String OVERLOADED_MESSAGE = ChatColor.RED + "Il server è sovraccarico, riprova tra qualche secondo.";
+	public static final String STARTING_UP_MESSAGE = ChatColor.RED + "I booster sono in fase di avvio, riprova tra qualche secondo.";
+	
 	public abstract void execute() throws SQLException;
 	
 	public static void submitAsync(SQLTask task, CommandSender reference) {
-		Bukkit.getScheduler().runTaskAsynchronously(BoostersPlugin.instance, () -> {
+		submitAsync(task, reference, Priority.NORMAL);
+	}
+	
+	public static void submitAsync(SQLTask task, CommandSender reference, Priority priority) {
+		boolean accepted = SQLExecutor.submit(() -> {
 			try {
 				task.execute();
+			} catch (DatabaseUnavailableException ex) {
+				// Comando eseguito prima che l'avvio in background abbia raggiunto il database, oppure pool esaurito
+				if (reference != null) {
+					reference.sendMessage(SQLManager.isConnected() ? OVERLOADED_MESSAGE : STARTING_UP_MESSAGE);
+				}
 			} catch (SQLException ex) {
 				if (reference != null) {
 					reference.sendMessage(ChatColor.RED + "Si è verificato un errore interno. Se persiste, contatta lo staff.");
 				}
 				ex.printStackTrace();
 			}
-		});
+		}, priority);
+		
+		if (!accepted && reference != null) {
+			reference.sendMessage(OVERLOADED_MESSAGE);
+		}
 	}
 
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.gmail.filoghost.boosters.metrics.Metrics;
+
+import lombok.Cleanup;
+
+public class SQLUtils {
+
+	private static final String CONNECTION_ERROR_SQL_STATE_PREFIX = "08";
+	private static final LongAdder ERRORS = Metrics.counter("sql_errors");
+
+
+	public static <T> T query(PooledConnection connection, String sql, ResultReader<T> reader, Object... params) throws SQLException {
+		long waitNanos = connection.takeBorrowWaitNanos();
+		long startTime = System.nanoTime();
+		try {
+			@Cleanup PreparedStatement statement = prepare(connection, sql, params);
+			@Cleanup ResultSet resultSet = statement.executeQuery();
+			T result = reader.read(resultSet);
+			SlowQueryLog.record(sql, params, waitNanos, System.nanoTime() - startTime, null);
+			return result;
+		} catch (SQLException e) {
+			SlowQueryLog.record(sql, params, waitNanos, System.nanoTime() - startTime, e);
+			checkBroken(connection, e);
+			throw e;
+		}
+	}
+
+
+	public static int update(PooledConnection connection, String sql, Object... params) throws SQLException {
+		long waitNanos = connection.takeBorrowWaitNanos();
+		long startTime = System.nanoTime();
+		try {
+			@Cleanup PreparedStatement statement = prepare(connection, sql, params);
+			int updatedRows = statement.executeUpdate();
+			SlowQueryLog.record(sql, params, waitNanos, System.nanoTime() - startTime, null);
+			return updatedRows;
+		} catch (SQLException e) {
+			SlowQueryLog.record(sql, params, waitNanos, System.nanoTime() - startTime, e);
+			checkBroken(connection, e);
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Esegue la stessa istruzione per ogni riga con un solo batch JDBC, in una transazione: o vengono applicate tutte le righe o nessuna.
+	 */
+	public static void batchUpdate(PooledConnection connection, String sql, List<Object[]> rows) throws SQLException {
+		long waitNanos = connection.takeBorrowWaitNanos();
+		long startTime = System.nanoTime();
+		try {
+			transaction(connection, () -> {
+				try {
+					@Cleanup PreparedStatement statement = connection.getConnection().prepareStatement(sql);
+					for (Object[] params : rows) {
+						for (int i = 0; i < params.length; i++) {
+							statement.setObject(i + 1, MaskedValue.unwrap(params[i]));
+						}
+						statement.addBatch();
+					}
+					statement.executeBatch();
+					return null;
+				} catch (SQLException e) {
+					ERRORS.increment();
+					throw e;
+				}
+			});
+			SlowQueryLog.recordBatch(sql, rows.size(), waitNanos, System.nanoTime() - startTime, null);
+		} catch (SQLException e) {
+			SlowQueryLog.recordBatch(sql, rows.size(), waitNanos, System.nanoTime() - startTime, e);
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Esegue le operazioni in una transazione, annullata se viene lanciata un'eccezione.
+	 * Il corpo deve contare da sé gli errori delle istruzioni eseguite direttamente sulla connessione JDBC.
+	 */
+	public static <T> T transaction(PooledConnection connection, TransactionBody<T> body) throws SQLException {
+		Connection jdbcConnection = connection.getConnection();
+		boolean autoCommit = jdbcConnection.getAutoCommit();
+		boolean runningBody = false;
+		
+		try {
+			jdbcConnection.setAutoCommit(false);
+			runningBody = true;
+			T result = body.run();
+			runningBody = false;
+			jdbcConnection.commit();
+			return result;
+			
+		} catch (SQLException e) {
+			rollback(jdbcConnection, e);
+			if (!runningBody) {
+				// Gli errori delle istruzioni nel corpo sono già stati contati dove sono stati lanciati
+				ERRORS.increment();
+			}
+			markIfBroken(connection, e);
+			throw e;
+			
+		} catch (RuntimeException e) {
+			// Anche in questo caso: ripristinare l'auto-commit confermerebbe le modifiche parziali
+			rollback(jdbcConnection, e);
+			throw e;
+			
+		} finally {
+			try {
+				jdbcConnection.setAutoCommit(autoCommit);
+			} catch (SQLException e) {
+				// Non si può restituire al pool una connessione rimasta in una transazione
+				connection.setBroken(true);
+			}
+		}
+	}
+
+
+	public static boolean isConnectionError(SQLException e) {
+		return e.getSQLState() != null && e.getSQLState().startsWith(CONNECTION_ERROR_SQL_STATE_PREFIX);
+	}
+
+
+	/*
+	 * Chiudere l'istruzione la restituisce alla cache del driver (cachePrepStmts), quindi lo stesso SQL non viene preparato di nuovo.
+	 */
+	private static PreparedStatement prepare(PooledConnection connection, String sql, Object... params) throws SQLException {
+		PreparedStatement statement = connection.getConnection().prepareStatement(sql);
+		for (int i = 0; i < params.length; i++) {
+			statement.setObject(i + 1, MaskedValue.unwrap(params[i]));
+		}
+		return statement;
+	}
+
+
+	private static void rollback(Connection jdbcConnection, Exception cause) {
+		try {
+			jdbcConnection.rollback();
+		} catch (SQLException rollbackError) {
+			cause.addSuppressed(rollbackError);
+		}
+	}
+
+
+	private static void checkBroken(PooledConnection connection, SQLException e) {
+		ERRORS.increment();
+		markIfBroken(connection, e);
+	}
+
+
+	private static void markIfBroken(PooledConnection connection, SQLException e) {
+		if (isConnectionError(e)) {
+			// La connessione non è più utilizzabile, il pool la sostituirà
+			connection.setBroken(true);
+		}
+	}
+
+
+	public static interface TransactionBody<T> {
+
+		T run() throws SQLException;
+
+	}
+
+
+	public static interface ResultReader<T> {
+
+		T read(ResultSet resultSet) throws SQLException;
+
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gmail.filoghost.boosters.sql;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import com.gmail.filoghost.boosters.BoostersPlugin;
+import com.gmail.filoghost.boosters.metrics.Metrics;
+import com.gmail.filoghost.boosters.sql.SQLExecutor.Priority;
+import com.google.common.collect.Maps;
+
+import lombok.Cleanup;
+
+/**
+ * Registra le query più lente della soglia configurata (anche quelle fallite, ad esempio per timeout), separando il tempo
+ * di attesa della connessione da quello di esecuzione. Per ogni forma di query lenta viene anche registrato periodicamente
+ * il piano di esecuzione (EXPLAIN), così una scansione completa della tabella si nota senza dover usare un profiler.
+ */
+public class SlowQueryLog {
+	
+	// Le liste IN (?, ?, ...) hanno lunghezza variabile, ma sono la stessa query
+	private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\?(, \\?)+\\)");
+	private static final LongAdder SLOW_QUERIES = Metrics.counter("sql_slow_queries");
+	
+	private static long thresholdNanos = -1;
+	private static long explainIntervalMillis = TimeUnit.MINUTES.toMillis(10);
+	
+	private static final Map<String, Long> lastExplainByShape = Maps.newConcurrentMap();
+	
+	
+	/**
+	 * @param thresholdMillis le query che durano almeno questo tempo vengono registrate, negativo per disattivare
+	 */
+	public static void configure(long thresholdMillis, long explainIntervalMillis) {
+		SlowQueryLog.thresholdNanos = thresholdMillis >= 0 ? TimeUnit.MILLISECONDS.toNanos(thresholdMillis) : -1;
+		SlowQueryLog.explainIntervalMillis = explainIntervalMillis;
+	}
+	
+	
+	/**
+	 * @param error null se l'istruzione è stata eseguita con successo
+	 */
+	protected static void record(String sql, Object[] params, long waitNanos, long executeNanos, SQLException error) {
+		if (!isSlow(waitNanos, executeNanos)) {
+			return;
+		}
+		
+		log(sql + " " + Arrays.toString(params), waitNanos, executeNanos, error); // I parametri sensibili sono MaskedValue
+		
+		String shape = PLACEHOLDER_LIST.matcher(sql).replaceAll("(?...)");
+		long now = System.currentTimeMillis();
+		Long lastExplain = lastExplainByShape.get(shape);
+		
+		// Solo il thread che aggiorna il timestamp esegue l'EXPLAIN
+		boolean explainDue = lastExplain == null
+				? lastExplainByShape.putIfAbsent(shape, now) == null
+				: now - lastExplain >= explainIntervalMillis && lastExplainByShape.replace(shape, lastExplain, now);
+		
+		if (explainDue) {
+			// Se il database è sovraccarico viene scartato, si riproverà alla prossima query lenta dopo l'intervallo
+			SQLExecutor.submit(() -> explain(sql, params), Priority.LOW);
+		}
+	}
+	
+	
+	/**
+	 * Come {@link #record(String, Object[], long, long, SQLException)} per un batch, senza i parametri delle righe e senza EXPLAIN.
+	 */
+	protected static void recordBatch(String sql, int rows, long waitNanos, long executeNanos, SQLException error) {
+		if (isSlow(waitNanos, executeNanos)) {
+			log(sql + " (batch of " + rows + " rows)", waitNanos, executeNanos, error);
+		}
+	}
+	
+	
+	private static boolean isSlow(long waitNanos, long executeNanos) {
+		return thresholdNanos >= 0 && waitNanos + executeNanos >= thresholdNanos;
+	}
+	
+	
+	private static void log(String statement, long waitNanos, long executeNanos, SQLException error) {
+		SLOW_QUERIES.increment();
+		BoostersPlugin.instance.getLogger().warning("Slow query on thread " + Thread.currentThread().getName() + ": "
+				+ "waited " + TimeUnit.NANOSECONDS.toMillis(waitNanos) + "ms for the connection, "
+				+ (error == null ? "executed in " : "failed after ") + TimeUnit.NANOSECONDS.toMillis(executeNanos) + "ms: "
+				+ statement
+				+ (error != null ? " (" + error + ")" : ""));
+	}
+	
+	
+	/*
+	 * Eseguito in background su un'altra connessione, fuori da eventuali transazioni della query originale.
+	 */
+	private static void explain(String sql, Object[] params) {
+		try {
+			@Cleanup PooledConnection connection = SQLManager.getConnection();
+			@Cleanup PreparedStatement statement = connection.getConnection().prepareStatement("EXPLAIN " + sql);
+			for (int i = 0; i < params.length; i++) {
+				statement.setObject(i + 1, MaskedValue.unwrap(params[i]));
+			}
+			
+			@Cleanup ResultSet result = statement.executeQuery();
+			ResultSetMetaData metaData = result.getMetaData();
+			StringBuilder output = new StringBuilder("EXPLAIN of slow query: ").append(sql);
+			boolean fullScan = false;
+			
+			while (result.next()) {
+				output.append("\n ");
+				for (int column = 1; column <= metaData.getColumnCount(); column++) {
+					String label = metaData.getColumnLabel(column);
+					String value = result.getString(column);
+					output.append(' ').append(label).append('=').append(value);
+					
+					if (label.equalsIgnoreCase("type") && "ALL".equals(value)) {
+						fullScan = true;
+					}
+				}
+			}
+			
+			if (fullScan) {
+				output.append("\n  (full table scan)");
+			}
+			BoostersPlugin.instance.getLogger().warning(output.toString());
+			
+		} catch (SQLException e) {
+			// Non tutte le istruzioni supportano EXPLAIN, non è un problema
+			BoostersPlugin.instance.getLogger().info("Could not EXPLAIN slow query: " + e.getMessage());
+		}
+	}
+
+}